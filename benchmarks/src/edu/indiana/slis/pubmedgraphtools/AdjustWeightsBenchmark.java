@@ -0,0 +1,49 @@
+package edu.indiana.slis.pubmedgraphtools;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+
+/**
+ * AdjustWeightsBenchmark
+ * Normalizes the weights of the contributors kept for one MeSH term with
+ * ContributorList.adjustWeights, for typical limits and for an unlimited file.
+ * The weights are already normalized after the first call, which does not
+ * change the amount of work done by later calls.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+public class AdjustWeightsBenchmark {
+	@Param({"10", "50", "100", "1000", "100000"})
+	public int contributors;
+
+	private ContributorList list = null;
+
+	@Setup
+	public void setup() {
+		list = BenchmarkData.contributors(contributors, new Random(BenchmarkData.SEED));
+	} //end of setup
+
+	@Benchmark
+	public double adjustWeights() {
+		list.adjustWeights();
+		return(list.getWeight(0));
+	} //end of adjustWeights
+
+} //end of class AdjustWeightsBenchmark
@@ -0,0 +1,113 @@
+package edu.indiana.slis.pubmedgraphtools;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Random;
+
+
+/**
+ * BenchmarkData
+ * Generates the inputs used by the benchmarks.  Everything is derived from a
+ * fixed seed, so the same parameters always produce the same data and results
+ * can be reproduced offline without any of the production PageRank files.
+ */
+public class BenchmarkData {
+	public final static long SEED = 20150123L;
+	// exponent of the Pareto distribution used for PageRank-like weights
+	private final static double POWER_LAW_ALPHA = 1.2;
+
+
+	/**
+	 * powerLawWeights
+	 * @return  weights that follow a power law, sorted in descending order and 
+	 *          normalized to total 1, like the rows of a PageRank result file
+	 */
+	public static double[] powerLawWeights(int count, Random random) {
+		double[] weights = new double[count];
+		double total = 0.0;
+		for (int i = 0; i < count; i++) {
+			weights[i] = Math.pow(1.0 - random.nextDouble(), -1.0 / POWER_LAW_ALPHA);
+			total += weights[i];
+		}
+		Arrays.sort(weights);
+		double[] sorted = new double[count];
+		for (int i = 0; i < count; i++)
+			sorted[i] = weights[count - 1 - i] / total;
+		return(sorted);
+	} //end of powerLawWeights
+
+
+	/**
+	 * pageRankRows
+	 * @param rows       integer with the number of rows to generate
+	 * @param idRange    integer with the range of the numeric contributor IDs
+	 * @return           the bytes of a PageRank result file: "id,weight" rows sorted
+	 *                   by descending weight.  Half the weights are written as 
+	 *                   Double.toString and half in the 7 digit E notation.
+	 */
+	public static byte[] pageRankRows(int rows, int idRange, Random random) {
+		double[] weights = powerLawWeights(rows, random);
+		StringBuilder data = new StringBuilder(rows * 28);
+		for (int i = 0; i < rows; i++) {
+			data.append(random.nextInt(idRange)).append(',');
+			if (random.nextBoolean())
+				data.append(weights[i]);
+			else
+				data.append(String.format("%.6E", weights[i]));
+			data.append('\n');
+		}
+		return(data.toString().getBytes(StandardCharsets.US_ASCII));
+	} //end of pageRankRows
+
+
+	/**
+	 * contributors
+	 * @return  a list of contributors with power-law weights in descending order
+	 */
+	public static ContributorList contributors(int count, Random random) {
+		double[] weights = powerLawWeights(count, random);
+		ContributorList contributors = new ContributorList(count);
+		for (int i = 0; i < count; i++)
+			contributors.add(Integer.toString(random.nextInt(Integer.MAX_VALUE)), weights[i]);
+		return(contributors);
+	} //end of contributors
+
+
+	/**
+	 * coAuthorCounts
+	 * @return  the co-author paper counts for one author, keyed by co-author ID
+	 */
+	public static HashMap<String, Integer> coAuthorCounts(int coAuthors, Random random) {
+		HashMap<String, Integer> counts = new HashMap<String, Integer>();
+		while (counts.size() < coAuthors)
+			counts.put(Integer.toString(random.nextInt(Integer.MAX_VALUE)), 3 + (int)Math.pow(1.0 - random.nextDouble(), -1.0));
+		return(counts);
+	} //end of coAuthorCounts
+
+
+	/**
+	 * labels
+	 * @return  a lookup table of numeric IDs 1 to size and their labels
+	 */
+	public static HashMap<String, String> labels(int size) {
+		HashMap<String, String> labels = new HashMap<String, String>();
+		for (int i = 1; i <= size; i++)
+			labels.put(Integer.toString(i), "Label for term " + i);
+		return(labels);
+	} //end of labels
+
+
+	/**
+	 * lookupKeys
+	 * @return  keys between 1 and 110% of the table size, so about one in
+	 *          eleven keys is not in the table
+	 */
+	public static String[] lookupKeys(int count, int tableSize, Random random) {
+		String[] keys = new String[count];
+		for (int i = 0; i < count; i++)
+			keys[i] = Integer.toString(1 + random.nextInt(tableSize + tableSize / 10));
+		return(keys);
+	} //end of lookupKeys
+
+} //end of class BenchmarkData
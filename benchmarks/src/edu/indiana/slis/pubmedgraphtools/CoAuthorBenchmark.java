@@ -0,0 +1,68 @@
+package edu.indiana.slis.pubmedgraphtools;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+
+/**
+ * CoAuthorBenchmark
+ * Collects the co-authors of one author in a CoAuthorGroup and writes their
+ * weighted edges, as coAuthor does for each author.  The edges are written to a
+ * discarding stream, so only the grouping and formatting work is measured.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+public class CoAuthorBenchmark {
+	@Param({"5", "50", "500"})
+	public int coAuthors;
+
+	private final static byte[] AUTHOR = "12345".getBytes(StandardCharsets.US_ASCII);
+
+	private byte[][] ids = null;
+	private int[] counts = null;
+	private CoAuthorGroup group = new CoAuthorGroup(System.lineSeparator());
+	private OutputStream out = null;
+
+	@Setup
+	public void setup() {
+		HashMap<String, Integer> generated = BenchmarkData.coAuthorCounts(coAuthors, new Random(BenchmarkData.SEED));
+		ids = new byte[generated.size()][];
+		counts = new int[generated.size()];
+		int i = 0;
+		for (Map.Entry<String, Integer> entry : generated.entrySet()) {
+			ids[i] = entry.getKey().getBytes(StandardCharsets.US_ASCII);
+			counts[i++] = entry.getValue();
+		}
+		out = OutputStream.nullOutputStream();
+	} //end of setup
+
+	@Benchmark
+	public int writeGroup() throws IOException {
+		group.start(AUTHOR, 0, AUTHOR.length);
+		for (int i = 0; i < ids.length; i++)
+			group.add(ids[i], 0, ids[i].length, counts[i]);
+		return(group.write(out));
+	} //end of writeGroup
+
+} //end of class CoAuthorBenchmark
@@ -0,0 +1,403 @@
+package edu.indiana.slis.pubmedgraphtools;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Properties;
+import java.util.Random;
+
+
+/**
+ * DatasetGenerator
+ * Writes a synthetic dataset with inputs for every tool in the package, laid out
+ * under a single root directory:<br/>
+ * pagerank/type/.../type_descriptorId_qualifierId  PageRank result files for ContributedBy,
+ *                                                  nested the given number of directories deep<br/>
+ * excluded.txt                                     IDs to exclude, one per line<br/>
+ * src/Author-CoAuthor-3paper-threshold.tsv         author, co-author and paper count, grouped by author<br/>
+ * src/resources/QD/descriptor.txt                  descriptor IDs and labels<br/>
+ * src/resources/QD/qualifier.txt                   qualifier IDs and labels<br/>
+ * src/resources/QD/top3000QualifiedDescriptorsUsed.tsv  descriptor and qualifier IDs to label<br/>
+ * log4j.properties                                 logging at the WARN level for the tools<br/>
+ * dataset.properties                               the settings used and the size of each input<br/>
+ * The src paths are the ones coAuthor, descFile and qualFile read when run from the root.
+ *
+ * Weights within each PageRank file follow a power law, are normalized to total 1
+ * and are sorted in descending order, and the number of rows in each file also
+ * follows a power law, so a few terms have most of the contributors.  The same
+ * seed and settings always produce the same files.
+ */
+public class DatasetGenerator {
+	public final static String DATASET_PROPERTIES = "dataset.properties";
+	public final static String PAGERANK_DIR = "pagerank";
+	public final static String EXCLUDED_FILE = "excluded.txt";
+	public final static String CO_AUTHOR_FILE = "src/Author-CoAuthor-3paper-threshold.tsv";
+	public final static String DESCRIPTOR_FILE = "src/resources/QD/descriptor.txt";
+	public final static String QUALIFIER_FILE = "src/resources/QD/qualifier.txt";
+	public final static String QUALIFIED_FILE = "src/resources/QD/top3000QualifiedDescriptorsUsed.tsv";
+	private final static double WEIGHT_ALPHA = 1.2; // exponent for the weights within a file
+	private final static double SIZE_ALPHA = 1.5;   // exponent for the number of rows in a file
+	private final static double UNQUALIFIED_FRACTION = 0.4; // files with a qualifier ID of 0
+	private final static int MAX_SIZE_FACTOR = 1000; // largest file is at most this many times the mean
+	private final static int BUFFER_SIZE = 1 << 20;
+	// settings accepted by main and their defaults
+	private final static String[][] DEFAULTS = {
+			{"-seed", "20150123"},
+			{"-types", "author,paper,venue"},
+			{"-files", "1000"},       // PageRank files for each type
+			{"-rows", "2000"},        // mean rows in a PageRank file
+			{"-depth", "2"},          // directory levels below each type
+			{"-fanout", "4"},         // directories at each level
+			{"-ids", "5000000"},      // range of the contributor IDs
+			{"-excluded", "10000"},   // excluded IDs
+			{"-authors", "100000"},   // authors in the co-author file
+			{"-coauthors", "20"},     // mean co-authors for each author
+			{"-descriptors", "30000"},
+			{"-qualifiers", "80"},
+			{"-qualified", "3000"}};  // rows in the qualified descriptor list
+
+	private File root = null;
+	private Random random = null;
+	private HashMap<String, String> settings = new HashMap<String, String>();
+	private Properties sizes = new Properties();
+
+
+	public DatasetGenerator(File root, HashMap<String, String> options) {
+		this.root = root;
+		for (String[] setting : DEFAULTS)
+			settings.put(setting[0], setting[1]);
+		settings.putAll(options);
+		random = new Random(getLong("-seed"));
+	} //end of constructor
+
+
+	/**
+	 * generate
+	 * Writes every input of the dataset, followed by dataset.properties.
+	 */
+	public void generate() throws IOException {
+		long pagerankRows = 0;
+		long pagerankFiles = 0;
+		for (String type : settings.get("-types").split(",")) {
+			long[] written = writePageRankFiles(type.trim());
+			pagerankFiles += written[0];
+			pagerankRows += written[1];
+		}
+		sizes.setProperty("pagerankFiles", Long.toString(pagerankFiles));
+		sizes.setProperty("pagerankRows", Long.toString(pagerankRows));
+		sizes.setProperty("excludedIds", Long.toString(writeExcludedIds()));
+		sizes.setProperty("coAuthorRows", Long.toString(writeCoAuthors()));
+		sizes.setProperty("descriptorRows", Long.toString(writeLabels(DESCRIPTOR_FILE,
+				getInt("-descriptors"), "Descriptor")));
+		sizes.setProperty("qualifierRows", Long.toString(writeLabels(QUALIFIER_FILE,
+				getInt("-qualifiers"), "qualifier")));
+		sizes.setProperty("qualifiedRows", Long.toString(writeQualifiedDescriptors()));
+		writeLoggingConfiguration();
+
+		Properties dataset = new Properties();
+		for (String name : settings.keySet())
+			dataset.setProperty("setting." + name.substring(1), settings.get(name));
+		dataset.putAll(sizes);
+		Writer writer = openWriter(DATASET_PROPERTIES);
+		try {
+			dataset.store(writer, "Synthetic dataset written by DatasetGenerator");
+		} finally {
+			writer.close();
+		}
+	} //end of generate
+
+
+	/**
+	 * writePageRankFiles
+	 * Writes the PageRank result files for one type of contributor, spread over
+	 * nested directories.
+	 * @return  long array with the number of files and the number of rows written
+	 */
+	private long[] writePageRankFiles(String type) throws IOException {
+		int files = getInt("-files");
+		int depth = getInt("-depth");
+		int fanout = Math.max(1, getInt("-fanout"));
+		int mean = getInt("-rows");
+		int ids = getInt("-ids");
+		int descriptors = getInt("-descriptors");
+		int qualifiers = getInt("-qualifiers");
+		// the number of distinct terms limits the number of files
+		files = (int)Math.min((long)files, (long)descriptors * (qualifiers + 1));
+		HashSet<String> terms = new HashSet<String>();
+		long rows = 0;
+		StringBuilder line = new StringBuilder(32);
+		for (int i = 0; i < files; i++) {
+			String term = null;
+			do {
+				int qualifier = (random.nextDouble() < UNQUALIFIED_FRACTION)? 0 : 1 + random.nextInt(qualifiers);
+				term = (1 + random.nextInt(descriptors)) + "_" + qualifier;
+			} while (!terms.add(term));
+			// the directory is chosen from the file number so the files are spread evenly
+			StringBuilder path = new StringBuilder(PAGERANK_DIR).append('/').append(type);
+			int position = i;
+			for (int level = 0; level < depth; level++) {
+				path.append("/d").append(position % fanout);
+				position /= fanout;
+			}
+			path.append('/').append(type).append('_').append(term);
+
+			int count = (int)Math.max(1, Math.min((long)mean * MAX_SIZE_FACTOR,
+					Math.round(mean * pareto(SIZE_ALPHA) * (SIZE_ALPHA - 1) / SIZE_ALPHA)));
+			double[] weights = powerLawWeights(count);
+			Writer writer = openWriter(path.toString());
+			try {
+				for (int row = 0; row < count; row++) {
+					line.setLength(0);
+					line.append(1 + random.nextInt(ids)).append(',');
+					appendScientific(line, weights[row]);
+					line.append('\n');
+					writer.append(line);
+				}
+			} finally {
+				writer.close();
+			}
+			rows += count;
+		}
+		return(new long[] {files, rows});
+	} //end of writePageRankFiles
+
+
+	private long writeExcludedIds() throws IOException {
+		int excluded = getInt("-excluded");
+		int ids = getInt("-ids");
+		Writer writer = openWriter(EXCLUDED_FILE);
+		try {
+			for (int i = 0; i < excluded; i++) {
+				writer.write(Integer.toString(1 + random.nextInt(ids)));
+				writer.write('\n');
+			}
+		} finally {
+			writer.close();
+		}
+		return(excluded);
+	} //end of writeExcludedIds
+
+
+	/**
+	 * writeCoAuthors
+	 * Writes the co-author file grouped by author.  Each author has a power-law
+	 * number of distinct co-authors, and each pair has written at least three papers.
+	 */
+	private long writeCoAuthors() throws IOException {
+		int authors = getInt("-authors");
+		int mean = getInt("-coauthors");
+		long rows = 0;
+		HashSet<Integer> coAuthors = new HashSet<Integer>();
+		StringBuilder line = new StringBuilder(32);
+		Writer writer = openWriter(CO_AUTHOR_FILE);
+		try {
+			for (int author = 1; author <= authors; author++) {
+				int count = (int)Math.max(1, Math.min(authors - 1L,
+						Math.round(mean * pareto(SIZE_ALPHA) * (SIZE_ALPHA - 1) / SIZE_ALPHA)));
+				coAuthors.clear();
+				while (coAuthors.size() < count) {
+					int coAuthor = 1 + random.nextInt(authors);
+					if (coAuthor == author || !coAuthors.add(coAuthor))
+						continue;
+					line.setLength(0);
+					line.append(author).append('\t').append(coAuthor).append('\t')
+					    .append(2 + (int)Math.min(1000.0, pareto(2.0)))
+					    .append('\n');
+					writer.append(line);
+				}
+				rows += count;
+			}
+		} finally {
+			writer.close();
+		}
+		return(rows);
+	} //end of writeCoAuthors
+
+
+	/**
+	 * writeLabels
+	 * Writes a table of IDs 1 to size and their labels.  Some labels contain a
+	 * comma, as MeSH labels such as "Neoplasms, Experimental" do.
+	 */
+	private long writeLabels(String fileName, int size, String prefix) throws IOException {
+		Writer writer = openWriter(fileName);
+		try {
+			for (int id = 1; id <= size; id++) {
+				writer.write(id + "\t" + prefix + " " + id);
+				if (random.nextInt(5) == 0)
+					writer.write(", Variant " + (1 + random.nextInt(10)));
+				writer.write('\n');
+			}
+		} finally {
+			writer.close();
+		}
+		return(size);
+	} //end of writeLabels
+
+
+	private long writeQualifiedDescriptors() throws IOException {
+		int rows = getInt("-qualified");
+		int descriptors = getInt("-descriptors");
+		int qualifiers = getInt("-qualifiers");
+		Writer writer = openWriter(QUALIFIED_FILE);
+		try {
+			for (int i = 0; i < rows; i++) {
+				int qualifier = (random.nextDouble() < UNQUALIFIED_FRACTION)? 0 : 1 + random.nextInt(qualifiers);
+				writer.write((1 + random.nextInt(descriptors)) + "\t" + qualifier + "\n");
+			}
+		} finally {
+			writer.close();
+		}
+		return(rows);
+	} //end of writeQualifiedDescriptors
+
+
+	private void writeLoggingConfiguration() throws IOException {
+		Writer writer = openWriter("log4j.properties");
+		try {
+			writer.write("log4j.rootLogger=WARN, stdout\n" +
+					"log4j.appender.stdout=org.apache.log4j.ConsoleAppender\n" +
+					"log4j.appender.stdout.layout=org.apache.log4j.PatternLayout\n" +
+					"log4j.appender.stdout.layout.ConversionPattern=%d %-5p %c{1} - %m%n\n");
+		} finally {
+			writer.close();
+		}
+	} //end of writeLoggingConfiguration
+
+
+	/**
+	 * powerLawWeights
+	 * @return  count weights drawn from a Pareto distribution, normalized to total 1
+	 *          and sorted in descending order
+	 */
+	private double[] powerLawWeights(int count) {
+		double[] weights = new double[count];
+		double total = 0.0;
+		for (int i = 0; i < count; i++) {
+			weights[i] = pareto(WEIGHT_ALPHA);
+			total += weights[i];
+		}
+		Arrays.sort(weights);
+		double[] sorted = new double[count];
+		for (int i = 0; i < count; i++)
+			sorted[i] = weights[count - 1 - i] / total;
+		return(sorted);
+	} //end of powerLawWeights
+
+
+	/**
+	 * pareto
+	 * @return  a value of at least 1 from a Pareto distribution with the given exponent
+	 */
+	private double pareto(double alpha) {
+		return(Math.pow(1.0 - random.nextDouble(), -1.0 / alpha));
+	} //end of pareto
+
+
+	/**
+	 * appendScientific
+	 * Appends a weight between 0 and 1 in the format of the PageRank files, such as
+	 * 1.2345678E-05.  This gives the same text as String.format("%.7E") without its cost.
+	 */
+	static void appendScientific(StringBuilder line, double weight) {
+		if (weight <= 0.0) {
+			line.append("0.0000000E+00");
+			return;
+		}
+		int exponent = (int)Math.floor(Math.log10(weight));
+		long digits = Math.round(weight / Math.pow(10, exponent) * 1e7);
+		// correct for log10 or rounding landing on the neighbouring power of ten
+		if (digits >= 100000000L) {
+			digits = Math.round(weight / Math.pow(10, ++exponent) * 1e7);
+		} else if (digits < 10000000L) {
+			digits = Math.round(weight / Math.pow(10, --exponent) * 1e7);
+		}
+		String fraction = Long.toString(digits % 10000000L);
+		line.append(digits / 10000000L).append('.');
+		for (int i = fraction.length(); i < 7; i++)
+			line.append('0');
+		line.append(fraction).append('E').append((exponent < 0)? '-' : '+');
+		int magnitude = Math.abs(exponent);
+		if (magnitude < 10)
+			line.append('0');
+		line.append(magnitude);
+	} //end of appendScientific
+
+
+	private Writer openWriter(String fileName) throws IOException {
+		File file = new File(root, fileName);
+		file.getParentFile().mkdirs();
+		return(new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file),
+				StandardCharsets.UTF_8), BUFFER_SIZE));
+	} //end of openWriter
+
+
+	private int getInt(String name) {
+		return(Integer.parseInt(settings.get(name)));
+	}
+
+	private long getLong(String name) {
+		return(Long.parseLong(settings.get(name)));
+	}
+
+
+	/**
+	 * @param args  The dataset root directory, followed by any of these settings as a name and value:<br/>
+	 * -seed n          Seed for the random data (default 20150123).<br/>
+	 * -types list      Comma-separated contributor types (default author,paper,venue).<br/>
+	 * -files n         PageRank files for each type (default 1000).<br/>
+	 * -rows n          Mean rows in a PageRank file (default 2000).<br/>
+	 * -depth n         Directory levels below each type (default 2).<br/>
+	 * -fanout n        Directories at each level (default 4).<br/>
+	 * -ids n           Range of the contributor IDs (default 5000000).<br/>
+	 * -excluded n      Number of excluded IDs (default 10000).<br/>
+	 * -authors n       Authors in the co-author file (default 100000).<br/>
+	 * -coauthors n     Mean co-authors for each author (default 20).<br/>
+	 * -descriptors n   Descriptors in the label table (default 30000).<br/>
+	 * -qualifiers n    Qualifiers in the label table (default 80).<br/>
+	 * -qualified n     Rows in the qualified descriptor list (default 3000).
+	 */
+	public static void main(String[] args) throws Exception {
+		HashMap<String, String> options = new HashMap<String, String>();
+		HashSet<String> names = new HashSet<String>();
+		for (String[] setting : DEFAULTS)
+			names.add(setting[0]);
+		if (args.length == 0 || args.length % 2 == 0) {
+			usage();
+			return;
+		}
+		for (int i = 1; i < args.length; i += 2) {
+			if (!names.contains(args[i])) {
+				usage();
+				return;
+			}
+			options.put(args[i], args[i + 1]);
+		}
+		long start = System.nanoTime();
+		DatasetGenerator generator = new DatasetGenerator(new File(args[0]), options);
+		try {
+			generator.generate();
+		} catch (NumberFormatException e) {
+			System.out.println(e.getMessage());
+			usage();
+			return;
+		}
+		System.out.println("Dataset written to " + args[0] + " in " +
+				(System.nanoTime() - start) / 1000000 + " ms: " + generator.sizes);
+	} //end of main
+
+	private static void usage() {
+		StringBuilder usage = new StringBuilder("DatasetGenerator dataset directory");
+		for (String[] setting : DEFAULTS)
+			usage.append(" [").append(setting[0]).append(' ').append(setting[1]).append(']');
+		System.out.println(usage);
+	} //end of usage
+
+} //end of class DatasetGenerator
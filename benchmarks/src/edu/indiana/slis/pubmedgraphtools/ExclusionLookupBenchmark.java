@@ -0,0 +1,101 @@
+package edu.indiana.slis.pubmedgraphtools;
+
+import java.nio.charset.StandardCharsets;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+
+/**
+ * ExclusionLookupBenchmark
+ * Checks IDs held in a row buffer against the excluded IDs, as each row of a
+ * PageRank file is checked.  The hashSet benchmark is the original HashSet of
+ * Strings, which needs a String for every ID checked.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+public class ExclusionLookupBenchmark {
+	private final static int PROBES = 4096;
+
+	@Param({"10000", "1000000"})
+	public int exclusions;
+
+	// numeric IDs such as PMIDs, or a mix with non-numeric author keys
+	@Param({"numeric", "mixed"})
+	public String idKind;
+
+	private ExcludedIds excludedIds = null;
+	private HashSet<String> excludedStrings = null;
+	private byte[] probeBuffer = null;
+	private int[] probeStarts = new int[PROBES + 1];
+
+	@Setup
+	public void setup() {
+		Random random = new Random(BenchmarkData.SEED);
+		int idRange = exclusions * 4;
+		excludedIds = new ExcludedIds();
+		excludedStrings = new HashSet<String>();
+		for (int i = 0; i < exclusions; i++) {
+			String id = makeId(random, idRange);
+			excludedIds.add(id);
+			excludedStrings.add(id);
+		}
+		excludedIds.seal();
+		StringBuilder probes = new StringBuilder();
+		for (int i = 0; i < PROBES; i++) {
+			probeStarts[i] = probes.length();
+			probes.append(makeId(random, idRange));
+		}
+		probeStarts[PROBES] = probes.length();
+		probeBuffer = probes.toString().getBytes(StandardCharsets.US_ASCII);
+	} //end of setup
+
+	private String makeId(Random random, int idRange) {
+		int number = random.nextInt(idRange);
+		if ("mixed".equals(idKind) && random.nextBoolean())
+			return("A" + number);
+		return(Integer.toString(number));
+	} //end of makeId
+
+	@Benchmark
+	@OperationsPerInvocation(PROBES)
+	public int excludedIds() {
+		int found = 0;
+		for (int i = 0; i < PROBES; i++) {
+			if (excludedIds.contains(probeBuffer, probeStarts[i], probeStarts[i + 1]))
+				found++;
+		}
+		return(found);
+	} //end of excludedIds
+
+	@Benchmark
+	@OperationsPerInvocation(PROBES)
+	public int hashSet() {
+		int found = 0;
+		for (int i = 0; i < PROBES; i++) {
+			String id = new String(probeBuffer, probeStarts[i], probeStarts[i + 1] - probeStarts[i],
+					StandardCharsets.US_ASCII);
+			if (excludedStrings.contains(id))
+				found++;
+		}
+		return(found);
+	} //end of hashSet
+
+} //end of class ExclusionLookupBenchmark
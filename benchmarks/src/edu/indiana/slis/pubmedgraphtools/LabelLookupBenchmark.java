@@ -0,0 +1,136 @@
+package edu.indiana.slis.pubmedgraphtools;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.util.HashMap;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+
+/**
+ * LabelLookupBenchmark
+ * Attaches labels to the rows of the qualified descriptor list.  The lookup
+ * benchmarks use a LabelTable as LabelJoin does; the keySetScan benchmarks are the
+ * loop over every key that descFile and qualFile used before, for comparison.
+ * descriptorIndexLookup uses a memory-mapped LabelIndex built in a temporary file.
+ * The descriptor table is sized like the MeSH descriptors and the qualifier
+ * table like the MeSH qualifiers.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+public class LabelLookupBenchmark {
+	private final static int ROWS = 3000; // rows in top3000QualifiedDescriptorsUsed.tsv
+
+	@Param({"30000"})
+	public int descriptors;
+
+	@Param({"80"})
+	public int qualifiers;
+
+	private HashMap<String, String> descriptorLabels = null;
+	private HashMap<String, String> qualifierLabels = null;
+	private LabelTable descriptorTable = new LabelTable();
+	private LabelTable qualifierTable = new LabelTable();
+	private LabelIndex descriptorIndex = null;
+	private String[] descriptorKeys = null;
+	private String[] qualifierKeys = null;
+	private BufferedWriter writer = null;
+
+	@Setup
+	public void setup() throws IOException {
+		Random random = new Random(BenchmarkData.SEED);
+		descriptorLabels = BenchmarkData.labels(descriptors);
+		qualifierLabels = BenchmarkData.labels(qualifiers);
+		for (String key : descriptorLabels.keySet())
+			descriptorTable.put(key, descriptorLabels.get(key));
+		for (String key : qualifierLabels.keySet())
+			qualifierTable.put(key, qualifierLabels.get(key));
+		descriptorKeys = BenchmarkData.lookupKeys(ROWS, descriptors, random);
+		qualifierKeys = BenchmarkData.lookupKeys(ROWS, qualifiers, random);
+		writer = new BufferedWriter(Writer.nullWriter());
+		File table = File.createTempFile("descriptors", ".txt");
+		table.deleteOnExit();
+		LabelIndex.getIndexFile(table).deleteOnExit();
+		PrintWriter tableWriter = new PrintWriter(table, "UTF-8");
+		for (String key : descriptorLabels.keySet())
+			tableWriter.print(key + "\t" + descriptorLabels.get(key) + "\n");
+		tableWriter.close();
+		descriptorIndex = LabelIndex.open(table);
+	} //end of setup
+
+	@Benchmark
+	@OperationsPerInvocation(ROWS)
+	public void descriptorLookup() throws IOException {
+		for (String key : descriptorKeys)
+			writeLabel(key, descriptorTable.getLabel(key));
+	} //end of descriptorLookup
+
+	@Benchmark
+	@OperationsPerInvocation(ROWS)
+	public void qualifierLookup() throws IOException {
+		for (String key : qualifierKeys)
+			writeLabel(key, qualifierTable.getLabel(key));
+	} //end of qualifierLookup
+
+	@Benchmark
+	@OperationsPerInvocation(ROWS)
+	public void descriptorIndexLookup() throws IOException {
+		for (String key : descriptorKeys)
+			writeLabel(key, descriptorIndex.getLabel(key));
+	} //end of descriptorIndexLookup
+
+	@Benchmark
+	@OperationsPerInvocation(ROWS)
+	public void descriptorKeySetScan() throws IOException {
+		for (String key : descriptorKeys)
+			keySetScan(key, descriptorLabels);
+	} //end of descriptorKeySetScan
+
+	@Benchmark
+	@OperationsPerInvocation(ROWS)
+	public void qualifierKeySetScan() throws IOException {
+		for (String key : qualifierKeys)
+			keySetScan(key, qualifierLabels);
+	} //end of qualifierKeySetScan
+
+	private void writeLabel(String key, String label) throws IOException {
+		if (label != null) {
+			writer.append(key + "," + label);
+			writer.newLine();
+		}
+	} //end of writeLabel
+
+	/**
+	 * keySetScan
+	 * The lookup descFile and qualFile made before LabelJoin.
+	 */
+	private void keySetScan(String descID, HashMap<String, String> map) throws IOException {
+		for (String x : map.keySet()) {
+			if (x.equals(descID)) {
+				writer.append(descID + "," + map.get(x));
+				writer.newLine();
+			}
+		}
+	} //end of keySetScan
+
+} //end of class LabelLookupBenchmark
@@ -0,0 +1,93 @@
+package edu.indiana.slis.pubmedgraphtools;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+
+/**
+ * RowParsingBenchmark
+ * Reads a PageRank result file the way ContributedBy.processContributor does:
+ * each row's ID is checked against the exclusions, and the kept rows have their
+ * ID turned into a String and their weight parsed.  The stringSplit benchmark is
+ * the original readLine/split/parseDouble approach, for comparison.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+public class RowParsingBenchmark {
+	@Param({"1000", "100000"})
+	public int rows;
+
+	@Param({"0.05"})
+	public double excludedFraction;
+
+	private byte[] data = null;
+	private ExcludedIds excludedIds = null;
+	private HashSet<String> excludedStrings = null;
+
+	@Setup
+	public void setup() {
+		Random random = new Random(BenchmarkData.SEED);
+		int idRange = rows * 10;
+		data = BenchmarkData.pageRankRows(rows, idRange, random);
+		excludedIds = new ExcludedIds();
+		excludedStrings = new HashSet<String>();
+		for (int i = 0; i < idRange * excludedFraction; i++) {
+			String id = Integer.toString(random.nextInt(idRange));
+			excludedIds.add(id);
+			excludedStrings.add(id);
+		}
+		excludedIds.seal();
+	} //end of setup
+
+	@Benchmark
+	public double delimitedRowReader(Blackhole blackhole) throws IOException {
+		DelimitedRowReader row = new DelimitedRowReader(new ByteArrayInputStream(data), ',');
+		double total = 0.0;
+		while (row.nextRow()) {
+			if (!excludedIds.contains(row.getBuffer(), row.getFieldStart(0), row.getFieldEnd(0))) {
+				blackhole.consume(row.getString(0));
+				total += row.parseDouble(1);
+			}
+		}
+		return(total);
+	} //end of delimitedRowReader
+
+	@Benchmark
+	public double stringSplit(Blackhole blackhole) throws IOException {
+		BufferedReader reader = new BufferedReader(new InputStreamReader(new ByteArrayInputStream(data)));
+		double total = 0.0;
+		String line = reader.readLine();
+		while (line != null) {
+			String[] fields = line.split(",");
+			if (!excludedStrings.contains(fields[0])) {
+				blackhole.consume(fields[0]);
+				total += Double.parseDouble(fields[1]);
+			}
+			line = reader.readLine();
+		}
+		return(total);
+	} //end of stringSplit
+
+} //end of class RowParsingBenchmark
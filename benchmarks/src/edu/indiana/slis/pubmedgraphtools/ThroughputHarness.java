@@ -0,0 +1,267 @@
+package edu.indiana.slis.pubmedgraphtools;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Properties;
+import java.util.TreeSet;
+
+
+/**
+ * ThroughputHarness
+ * Runs the tools end to end over a dataset written by DatasetGenerator and
+ * reports, for each run, the wall time, rows per second, peak RSS and GC time as
+ * JSON.  Each run uses a new JVM (through ToolRunner) whose working directory is
+ * the dataset root, so the tools find their inputs at the paths they expect and
+ * one run's heap and JIT state cannot affect the next.
+ *
+ * wallMillis includes starting the JVM; toolMillis is the time spent in the
+ * tool's main method and is the one rowsPerSec is based on.  The rows are the
+ * input rows the tool reads: for ContributedBy with a limit, that is every row
+ * of the PageRank files even though only the first rows of each are used.
+ */
+public class ThroughputHarness {
+	public final static String OUTPUT_DIR = "harness";
+	// settings accepted by main and their defaults
+	private final static String[][] DEFAULTS = {
+			{"-tools", "contributedBy,coAuthor,descFile,qualFile,labelJoin"},
+			{"-runs", "1"},
+			{"-limit", "50"},      // contributors for each term, 0 for no limit
+			{"-threads", "1"},     // ContributedBy and coAuthor threads
+			{"-jvmArgs", ""},      // space-separated options for the tool JVMs
+			{"-classpath", ""},    // defaults to the harness's own class path
+			{"-out", ""}};         // file for the JSON results
+
+	private File dataset = null;
+	private HashMap<String, String> settings = new HashMap<String, String>();
+	private Properties sizes = new Properties();
+
+
+	public ThroughputHarness(File dataset, HashMap<String, String> options) throws IOException {
+		this.dataset = dataset;
+		for (String[] setting : DEFAULTS)
+			settings.put(setting[0], setting[1]);
+		settings.putAll(options);
+		InputStream in = new FileInputStream(new File(dataset, DatasetGenerator.DATASET_PROPERTIES));
+		try {
+			sizes.load(in);
+		} finally {
+			in.close();
+		}
+	} //end of constructor
+
+
+	/**
+	 * run
+	 * Runs each tool the requested number of times.
+	 * @return  String with a JSON object holding the results of every run
+	 */
+	public String run() throws Exception {
+		new File(dataset, OUTPUT_DIR).mkdirs();
+		StringBuilder json = new StringBuilder(1024);
+		json.append("{\"dataset\":").append(quote(dataset.getAbsolutePath()))
+		    .append(",\"sizes\":{");
+		boolean first = true;
+		for (String name : new TreeSet<String>(sizes.stringPropertyNames())) {
+			if (name.startsWith("setting."))
+				continue;
+			json.append(first? "" : ",").append(quote(name)).append(':').append(sizes.getProperty(name));
+			first = false;
+		}
+		json.append("},\"results\":[");
+		int runs = Integer.parseInt(settings.get("-runs"));
+		first = true;
+		for (String tool : settings.get("-tools").split(",")) {
+			for (int run = 1; run <= runs; run++) {
+				json.append(first? "" : ",").append(runTool(tool.trim(), run));
+				first = false;
+			}
+		}
+		json.append("]}");
+		return(json.toString());
+	} //end of run
+
+
+	/**
+	 * runTool
+	 * Runs one tool in a new JVM and waits for it to finish.
+	 * @return  String with a JSON object for the run
+	 */
+	private String runTool(String tool, int run) throws Exception {
+		ArrayList<String> toolArgs = new ArrayList<String>();
+		String[] outputs = null;
+		long rows = 0;
+		if ("contributedBy".equals(tool)) {
+			toolArgs.add(ContributedBy.class.getName());
+			toolArgs.add(DatasetGenerator.PAGERANK_DIR);
+			toolArgs.add(OUTPUT_DIR + "/contributedBy.csv");
+			toolArgs.add(settings.get("-limit"));
+			toolArgs.add(DatasetGenerator.EXCLUDED_FILE);
+			toolArgs.add("-threads");
+			toolArgs.add(settings.get("-threads"));
+			outputs = new String[] {OUTPUT_DIR + "/contributedBy.csv"};
+			rows = getSize("pagerankRows");
+		} else if ("coAuthor".equals(tool)) {
+			toolArgs.add(coAuthor.class.getName());
+			toolArgs.add(coAuthor.DEFAULT_INPUT);
+			toolArgs.add(coAuthor.DEFAULT_OUTPUT);
+			toolArgs.add("-threads");
+			toolArgs.add(settings.get("-threads"));
+			outputs = new String[] {coAuthor.DEFAULT_OUTPUT};
+			rows = getSize("coAuthorRows");
+		} else if ("descFile".equals(tool)) {
+			toolArgs.add(descFile.class.getName());
+			outputs = new String[] {"src/resources/QD/output.csv"};
+			rows = getSize("descriptorRows") + getSize("qualifiedRows");
+		} else if ("qualFile".equals(tool)) {
+			toolArgs.add(qualFile.class.getName());
+			outputs = new String[] {"src/resources/QD/output2.csv"};
+			rows = getSize("qualifierRows") + getSize("qualifiedRows");
+		} else if ("labelJoin".equals(tool)) {
+			toolArgs.add(LabelJoin.class.getName());
+			outputs = new String[] {LabelJoin.DESCRIPTOR_OUTPUT, LabelJoin.QUALIFIER_OUTPUT};
+			rows = getSize("descriptorRows") + getSize("qualifierRows") + getSize("qualifiedRows");
+		} else
+			throw new IllegalArgumentException("Unknown tool: " + tool);
+		for (String output : outputs)
+			new File(dataset, output).delete();
+
+		File resultFile = new File(dataset, OUTPUT_DIR + "/" + tool + "-" + run + ".properties");
+		resultFile.delete();
+		ArrayList<String> command = new ArrayList<String>();
+		command.add(System.getProperty("java.home") + File.separator + "bin" + File.separator + "java");
+		String classpath = settings.get("-classpath");
+		command.add("-cp");
+		command.add(classpath.isEmpty()? System.getProperty("java.class.path") : classpath);
+		if (!settings.get("-jvmArgs").trim().isEmpty())
+			command.addAll(Arrays.asList(settings.get("-jvmArgs").trim().split("\\s+")));
+		command.add("-D" + ToolRunner.RESULT_PROPERTY + "=" + resultFile.getAbsolutePath());
+		command.add(ToolRunner.class.getName());
+		command.addAll(toolArgs);
+
+		File log = new File(dataset, OUTPUT_DIR + "/" + tool + "-" + run + ".log");
+		ProcessBuilder builder = new ProcessBuilder(command);
+		builder.directory(dataset);
+		builder.redirectErrorStream(true);
+		builder.redirectOutput(log);
+		long start = System.nanoTime();
+		int exitCode = builder.start().waitFor();
+		long wallMillis = (System.nanoTime() - start) / 1000000;
+
+		Properties result = new Properties();
+		if (resultFile.canRead()) {
+			InputStream in = new FileInputStream(resultFile);
+			try {
+				result.load(in);
+			} finally {
+				in.close();
+			}
+		}
+		long toolMillis = Long.parseLong(result.getProperty("toolMillis", Long.toString(wallMillis)));
+		StringBuilder json = new StringBuilder(256);
+		json.append("{\"tool\":").append(quote(tool))
+		    .append(",\"run\":").append(run)
+		    .append(",\"exitCode\":").append(exitCode)
+		    .append(",\"rows\":").append(rows)
+		    .append(",\"wallMillis\":").append(wallMillis)
+		    .append(",\"toolMillis\":").append(toolMillis)
+		    .append(",\"rowsPerSec\":").append((toolMillis > 0)? rows * 1000 / toolMillis : rows * 1000)
+		    .append(",\"peakRssKB\":").append(result.getProperty("peakRssKB", "-1"))
+		    .append(",\"peakHeapKB\":").append(result.getProperty("peakHeapKB", "-1"))
+		    .append(",\"gcMillis\":").append(result.getProperty("gcMillis", "-1"))
+		    .append(",\"gcCount\":").append(result.getProperty("gcCount", "-1"));
+		if (result.getProperty("error") != null)
+			json.append(",\"error\":").append(quote(result.getProperty("error")));
+		json.append(",\"log\":").append(quote(log.getAbsolutePath())).append('}');
+		return(json.toString());
+	} //end of runTool
+
+
+	private long getSize(String name) {
+		return(Long.parseLong(sizes.getProperty(name, "0")));
+	}
+
+
+	/**
+	 * quote
+	 * @return  the text as a JSON string
+	 */
+	static String quote(String text) {
+		StringBuilder quoted = new StringBuilder(text.length() + 2).append('"');
+		for (int i = 0; i < text.length(); i++) {
+			char c = text.charAt(i);
+			if (c == '"' || c == '\\')
+				quoted.append('\\').append(c);
+			else if (c < ' ')
+				quoted.append(String.format("\\u%04x", (int)c));
+			else
+				quoted.append(c);
+		}
+		return(quoted.append('"').toString());
+	} //end of quote
+
+
+	/**
+	 * @param args  The dataset root directory written by DatasetGenerator, followed
+	 *              by any of these settings as a name and value:<br/>
+	 * -tools list      Comma-separated tools to run: contributedBy, coAuthor, descFile,
+	 *                  qualFile and labelJoin (default all five).<br/>
+	 * -runs n          Runs of each tool (default 1).<br/>
+	 * -limit n         Maximum contributors for each term in ContributedBy, 0 for no limit (default 50).<br/>
+	 * -threads n       Threads used by ContributedBy and coAuthor (default 1).<br/>
+	 * -jvmArgs "args"  Options for the tool JVMs, such as "-Xmx2g -XX:+UseParallelGC".<br/>
+	 * -classpath path  Class path for the tool JVMs (default the harness's own class path).<br/>
+	 * -out file        File the JSON results are written to, as well as standard output.
+	 */
+	public static void main(String[] args) throws Exception {
+		HashMap<String, String> options = new HashMap<String, String>();
+		HashMap<String, String> names = new HashMap<String, String>();
+		for (String[] setting : DEFAULTS)
+			names.put(setting[0], setting[1]);
+		if (args.length == 0 || args.length % 2 == 0) {
+			usage();
+			return;
+		}
+		for (int i = 1; i < args.length; i += 2) {
+			if (!names.containsKey(args[i])) {
+				usage();
+				return;
+			}
+			options.put(args[i], args[i + 1]);
+		}
+		ThroughputHarness harness = new ThroughputHarness(new File(args[0]), options);
+		String json = null;
+		try {
+			json = harness.run();
+		} catch (IllegalArgumentException e) {
+			// also covers a NumberFormatException for a numeric setting
+			System.out.println(e.getMessage());
+			usage();
+			return;
+		}
+		System.out.println(json);
+		String outFileName = harness.settings.get("-out");
+		if (!outFileName.isEmpty()) {
+			PrintWriter writer = new PrintWriter(outFileName);
+			try {
+				writer.println(json);
+			} finally {
+				writer.close();
+			}
+		}
+	} //end of main
+
+	private static void usage() {
+		StringBuilder usage = new StringBuilder("ThroughputHarness dataset directory");
+		for (String[] setting : DEFAULTS)
+			usage.append(" [").append(setting[0]).append(' ')
+			     .append(setting[1].isEmpty()? "value" : setting[1]).append(']');
+		System.out.println(usage);
+	} //end of usage
+
+} //end of class ThroughputHarness
@@ -0,0 +1,106 @@
+package edu.indiana.slis.pubmedgraphtools;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.reflect.InvocationTargetException;
+import java.util.Arrays;
+import java.util.Properties;
+
+
+/**
+ * ToolRunner
+ * Runs the main method of one tool in a fresh JVM started by ThroughputHarness,
+ * then records what only the tool's own JVM can see: how long main took, the
+ * peak resident set size, the peak heap use and the time spent in garbage
+ * collection.  The results are written as properties to the file named by the
+ * harness.result system property.
+ */
+public class ToolRunner {
+	public final static String RESULT_PROPERTY = "harness.result";
+
+
+	/**
+	 * @param args  The fully qualified name of the tool class, followed by the
+	 *              arguments for its main method.
+	 */
+	public static void main(String[] args) throws Exception {
+		if (args.length == 0) {
+			System.out.println("ToolRunner tool class name, [tool arguments]");
+			return;
+		}
+		Properties result = new Properties();
+		int exitCode = 0;
+		long start = System.nanoTime();
+		try {
+			Class.forName(args[0]).getMethod("main", String[].class)
+					.invoke(null, (Object)Arrays.copyOfRange(args, 1, args.length));
+		} catch (InvocationTargetException e) {
+			e.getCause().printStackTrace();
+			result.setProperty("error", String.valueOf(e.getCause()));
+			exitCode = 1;
+		}
+		result.setProperty("toolMillis", Long.toString((System.nanoTime() - start) / 1000000));
+		long gcMillis = 0;
+		long gcCount = 0;
+		for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+			gcMillis += Math.max(0, collector.getCollectionTime());
+			gcCount += Math.max(0, collector.getCollectionCount());
+		}
+		result.setProperty("gcMillis", Long.toString(gcMillis));
+		result.setProperty("gcCount", Long.toString(gcCount));
+		long peakHeap = 0;
+		for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+			if (pool.getType() == MemoryType.HEAP && pool.getPeakUsage() != null)
+				peakHeap += pool.getPeakUsage().getUsed();
+		}
+		result.setProperty("peakHeapKB", Long.toString(peakHeap / 1024));
+		result.setProperty("peakRssKB", Long.toString(getPeakRss()));
+
+		String resultFileName = System.getProperty(RESULT_PROPERTY);
+		if (resultFileName != null) {
+			OutputStream out = new FileOutputStream(resultFileName);
+			try {
+				result.store(out, args[0]);
+			} finally {
+				out.close();
+			}
+		}
+		// the tools may leave non-daemon threads behind, so exit explicitly
+		System.exit(exitCode);
+	} //end of main
+
+
+	/**
+	 * getPeakRss
+	 * @return  the peak resident set size of this process in KB (VmHWM), or -1
+	 *          where /proc/self/status is not available
+	 */
+	static long getPeakRss() {
+		File status = new File("/proc/self/status");
+		if (!status.canRead())
+			return(-1);
+		BufferedReader reader = null;
+		try {
+			reader = new BufferedReader(new FileReader(status));
+			String line = null;
+			while ((line = reader.readLine()) != null) {
+				if (line.startsWith("VmHWM:"))
+					return(Long.parseLong(line.substring(6).replace("kB", "").trim()));
+			}
+		} catch (IOException e) {
+		} catch (NumberFormatException e) {
+		} finally {
+			try {reader.close();}catch(Exception e){}
+		}
+		return(-1);
+	} //end of getPeakRss
+
+} //end of class ToolRunner
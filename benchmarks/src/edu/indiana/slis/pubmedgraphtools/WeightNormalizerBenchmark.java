@@ -0,0 +1,58 @@
+package edu.indiana.slis.pubmedgraphtools;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+
+/**
+ * WeightNormalizerBenchmark
+ * Normalizes a run of power-law weights with each WeightNormalizer kernel.  The
+ * vector kernel needs the tools built on JDK 17 or later and the module added to
+ * the forked JVM:
+ *
+ *   java -jar target/benchmarks.jar WeightNormalizerBenchmark -jvmArgsAppend --add-modules=jdk.incubator.vector
+ *
+ * Without it, the runs of the vector kernel fail in their setup.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+public class WeightNormalizerBenchmark {
+	@Param({"10", "100", "1000", "100000"})
+	public int weights;
+
+	@Param({"scalar", "vector"})
+	public String kernel;
+
+	private double[] values = null;
+	private WeightNormalizer.Kernel normalizer = null;
+
+	@Setup
+	public void setup() {
+		values = BenchmarkData.powerLawWeights(weights, new Random(BenchmarkData.SEED));
+		normalizer = "vector".equals(kernel)? WeightNormalizer.loadVectorKernel() : new WeightNormalizer.ScalarKernel();
+		if (normalizer == null)
+			throw new IllegalStateException("The vector kernel is not available in this JVM.");
+	} //end of setup
+
+	@Benchmark
+	public double normalize() {
+		return(WeightNormalizer.normalize(normalizer, values, 0, values.length, 0));
+	} //end of normalize
+
+} //end of class WeightNormalizerBenchmark
@@ -0,0 +1,96 @@
+package edu.indiana.slis.pubmedgraphtools;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+
+/**
+ * VectorWeightKernel
+ * The WeightNormalizer kernel written with the Vector API.  Each lane of a
+ * 256-bit vector is one of the WeightNormalizer.LANES lanes of the sum, and
+ * does the same operations as the scalar kernel, so the totals are the same.
+ *
+ * This class is compiled on JDK 17 or later with the jdk.incubator.vector module
+ * (see the vector profile in pom.xml) and is only loaded reflectively.
+ */
+public class VectorWeightKernel implements WeightNormalizer.Kernel {
+	private final static VectorSpecies<Double> SPECIES = DoubleVector.SPECIES_256;
+
+
+	/**
+	 * @throws UnsupportedOperationException  if the processor does not have 256-bit
+	 *                                        vectors, when the scalar kernel is faster
+	 */
+	public VectorWeightKernel() {
+		if (SPECIES.length() != WeightNormalizer.LANES ||
+				DoubleVector.SPECIES_PREFERRED.vectorBitSize() < SPECIES.vectorBitSize())
+			throw new UnsupportedOperationException("256-bit vectors are not supported.");
+	} //end of constructor
+
+
+	public double sum(double[] weights, int start, int end) {
+		DoubleVector sums = DoubleVector.zero(SPECIES);
+		DoubleVector compensations = DoubleVector.zero(SPECIES);
+		int i = start;
+		for (; i <= end - WeightNormalizer.LANES; i += WeightNormalizer.LANES) {
+			DoubleVector x = DoubleVector.fromArray(SPECIES, weights, i);
+			DoubleVector t = sums.add(x);
+			compensations = compensations.add(error(sums, x, t));
+			sums = t;
+		}
+		return(finish(sums, compensations, weights, i, end));
+	} //end of sum
+
+
+	public double divide(double[] weights, int start, int end, double divisor) {
+		DoubleVector sums = DoubleVector.zero(SPECIES);
+		DoubleVector compensations = DoubleVector.zero(SPECIES);
+		int i = start;
+		for (; i <= end - WeightNormalizer.LANES; i += WeightNormalizer.LANES) {
+			DoubleVector x = DoubleVector.fromArray(SPECIES, weights, i).div(divisor);
+			x.intoArray(weights, i);
+			DoubleVector t = sums.add(x);
+			compensations = compensations.add(error(sums, x, t));
+			sums = t;
+		}
+		for (int j = i; j < end; j++)
+			weights[j] /= divisor;
+		return(finish(sums, compensations, weights, i, end));
+	} //end of divide
+
+
+	/**
+	 * error
+	 * @return  the rounding error of each lane of the addition t = s + x, as
+	 *          WeightNormalizer.error
+	 */
+	private static DoubleVector error(DoubleVector s, DoubleVector x, DoubleVector t) {
+		VectorMask<Double> larger = s.abs().compare(VectorOperators.GE, x.abs());
+		return(x.sub(t).add(s).blend(s.sub(t).add(x), larger));
+	} //end of error
+
+
+	/**
+	 * finish
+	 * Adds the weights left after the last full vector and combines the lanes.
+	 */
+	private static double finish(DoubleVector sums, DoubleVector compensations,
+			double[] weights, int start, int end) {
+		WeightNormalizer.Sum sum = new WeightNormalizer.Sum();
+		sum.setLane(0, sums.lane(0), compensations.lane(0));
+		sum.setLane(1, sums.lane(1), compensations.lane(1));
+		sum.setLane(2, sums.lane(2), compensations.lane(2));
+		sum.setLane(3, sums.lane(3), compensations.lane(3));
+		for (int i = start; i < end; i++)
+			sum.add(weights[i]);
+		return(sum.getTotal());
+	} //end of finish
+
+
+	public String getName() {
+		return("vector");
+	}
+
+} //end of class VectorWeightKernel
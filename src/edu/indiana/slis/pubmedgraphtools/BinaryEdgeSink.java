@@ -0,0 +1,151 @@
+package edu.indiana.slis.pubmedgraphtools;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+
+
+/**
+ * BinaryEdgeSink
+ * Writes the edges as fixed-width binary records, with the MeSH terms and the
+ * contributor IDs replaced by dense int indexes.  The strings behind the
+ * indexes are written to two node tables next to the edge file, so a loader can
+ * memory map the edge file and use the records without parsing anything.
+ *
+ * The edge file is little-endian.  It starts with a 32 byte header: the magic
+ * number "PGED", the format version, the record size, a reserved int, the number
+ * of edges as a long, and the number of terms and of contributors.  Each record
+ * after the header is 16 bytes: the term index and contributor index as ints and
+ * the weight as a double, so the records stay 8 byte aligned.
+ *
+ * The node tables are CSV files with the index in the first column: the term
+ * table (the edge file name with .terms.csv added) has the MeSH term followed by
+ * its label columns, and the contributor table (with .contributors.csv added)
+ * has the contributor ID.  Indexes are given in the order the strings are first
+ * seen, so row i of a table is index i.
+ */
+public class BinaryEdgeSink implements EdgeSink {
+	public final static int MAGIC = 0x44454750; // "PGED" when read as little-endian bytes
+	public final static int VERSION = 1;
+	public final static int HEADER_SIZE = 32;
+	public final static int RECORD_SIZE = 16;
+	public final static String TERM_TABLE_SUFFIX = ".terms.csv";
+	public final static String CONTRIBUTOR_TABLE_SUFFIX = ".contributors.csv";
+	private final static int BLOCK_RECORDS = 64 * 1024; // records written to the file at a time
+	private final static int TABLE_BUFFER_SIZE = 1024 * 1024;
+
+	private FileOutputStream stream = null;
+	private FileChannel channel = null;
+	private ByteBuffer block = null;
+	private Writer termTable = null;
+	private Writer contributorTable = null;
+	private HashMap<String, Integer> terms = new HashMap<String, Integer>();
+	private HashMap<String, Integer> contributors = new HashMap<String, Integer>();
+	private int term = -1; // index of the current MeSH term
+	private long edges = 0;
+
+
+	/**
+	 * @param edgeFile  File for the edge records; the node tables are written next to it
+	 */
+	public BinaryEdgeSink(File edgeFile) throws IOException {
+		try {
+			stream = new FileOutputStream(edgeFile);
+			channel = stream.getChannel();
+			channel.position(HEADER_SIZE); // the header is written once the counts are known
+			block = ByteBuffer.allocateDirect(BLOCK_RECORDS * RECORD_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+			termTable = openTable(new File(edgeFile.getPath() + TERM_TABLE_SUFFIX));
+			contributorTable = openTable(new File(edgeFile.getPath() + CONTRIBUTOR_TABLE_SUFFIX));
+		} catch (IOException e) {
+			closeFiles();
+			throw e;
+		}
+	} //end of constructor
+
+
+	private static Writer openTable(File tableFile) throws IOException {
+		return(new BufferedWriter(new OutputStreamWriter(
+				new FileOutputStream(tableFile), StandardCharsets.UTF_8), TABLE_BUFFER_SIZE));
+	} //end of openTable
+
+
+	public void startTerm(String meshTerm, String termLabels) throws IOException {
+		Integer index = terms.get(meshTerm);
+		if (index == null) {
+			index = terms.size();
+			terms.put(meshTerm, index);
+			termTable.write(index + "," + LabelJoin.quote(meshTerm) + termLabels + "\n");
+		}
+		term = index;
+	} //end of startTerm
+
+
+	public void addEdge(String contributorId, double weight) throws IOException {
+		Integer index = contributors.get(contributorId);
+		if (index == null) {
+			index = contributors.size();
+			contributors.put(contributorId, index);
+			contributorTable.write(index + "," + LabelJoin.quote(contributorId) + "\n");
+		}
+		block.putInt(term).putInt(index).putDouble(weight);
+		edges++;
+		if (!block.hasRemaining())
+			writeBlock();
+	} //end of addEdge
+
+
+	private void writeBlock() throws IOException {
+		block.flip();
+		while (block.hasRemaining())
+			channel.write(block);
+		block.clear();
+	} //end of writeBlock
+
+
+	public void flush() throws IOException {
+		writeBlock();
+		termTable.flush();
+		contributorTable.flush();
+	} //end of flush
+
+
+	public long getBytesWritten() {
+		return(HEADER_SIZE + edges * RECORD_SIZE);
+	}
+
+
+	/**
+	 * close
+	 * Writes the remaining records and the header.
+	 */
+	public void close() throws IOException {
+		try {
+			flush();
+			ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+			header.putInt(MAGIC).putInt(VERSION).putInt(RECORD_SIZE).putInt(0)
+			      .putLong(edges).putInt(terms.size()).putInt(contributors.size());
+			header.flip();
+			long position = 0;
+			while (header.hasRemaining())
+				position += channel.write(header, position);
+		} finally {
+			closeFiles();
+		}
+	} //end of close
+
+
+	private void closeFiles() {
+		try {termTable.close();}catch(Exception e){}
+		try {contributorTable.close();}catch(Exception e){}
+		try {stream.close();}catch(Exception e){}
+	} //end of closeFiles
+
+} //end of class BinaryEdgeSink
@@ -0,0 +1,394 @@
+package edu.indiana.slis.pubmedgraphtools;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+
+/**
+ * CoAuthorAggregator
+ * Aggregates co-author rows that are not grouped by author, using a bounded
+ * amount of memory.  Rows are collected in a byte arena with their positions and
+ * counts in int arrays.  When the memory budget is used up, the rows are sorted
+ * by author and co-author and spilled to a temporary run file; at the end the
+ * runs are merged, so each author's rows come together however the input was
+ * ordered.  The rows for the same author and co-author are added together.
+ *
+ * The run files are tab separated rows of author, co-author and count, so they
+ * are read back with DelimitedRowReader.  At most MAX_MERGE_RUNS runs are merged
+ * at once; when there are more, groups of runs are first merged into longer ones.
+ */
+public class CoAuthorAggregator {
+	public final static long DEFAULT_MEMORY = 256L * 1024 * 1024;
+	// memory used by a row besides its IDs: four ints plus two sort indexes
+	private final static int BYTES_PER_ROW = 24;
+	private final static int MAX_MERGE_RUNS = 128;
+	private final static int RUN_BUFFER_SIZE = 1 << 20;
+	private final static int INSERTION_SORT_SIZE = 16;
+
+	private long memoryBudget = DEFAULT_MEMORY;
+	private File tempDirectory = null;
+	private byte[] arena = new byte[64 * 1024]; // author and co-author IDs of each row
+	private int arenaLength = 0;
+	private int[] starts = new int[1024];       // start of each row's author ID in the arena
+	private int[] authorLengths = new int[1024];
+	private int[] ends = new int[1024];         // end of each row's co-author ID
+	private int[] counts = new int[1024];
+	private int size = 0;
+	private ArrayList<File> runs = new ArrayList<File>();
+	private int runsWritten = 0;
+
+
+	/**
+	 * @param memoryBudget   long with the bytes of heap to use for the rows held in memory
+	 * @param tempDirectory  File with the directory for the run files, or null for the
+	 *                       system's temporary directory
+	 */
+	public CoAuthorAggregator(long memoryBudget, File tempDirectory) {
+		// the arena is addressed with ints
+		this.memoryBudget = Math.max(1024 * 1024, Math.min(memoryBudget, Integer.MAX_VALUE - 8));
+		this.tempDirectory = tempDirectory;
+	} //end of constructor
+
+
+	/**
+	 * add
+	 * Adds a row, spilling the rows held so far if the memory budget is used up.
+	 * @param buffer       byte array holding the IDs
+	 * @param authorStart  integer with the position of the author ID
+	 * @param authorEnd    integer with the position after the author ID
+	 * @param start        integer with the position of the co-author ID
+	 * @param end          integer with the position after the co-author ID
+	 * @param count        integer with the number of papers written together
+	 */
+	public void add(byte[] buffer, int authorStart, int authorEnd, int start, int end, int count)
+			throws IOException {
+		int authorLength = authorEnd - authorStart;
+		int length = authorLength + (end - start);
+		if (arenaLength + length + (long)(size + 1) * BYTES_PER_ROW > memoryBudget && size > 0)
+			spill();
+		if (arenaLength + length > arena.length)
+			arena = Arrays.copyOf(arena, (int)Math.min(Math.max((long)arena.length * 2, arenaLength + length),
+					memoryBudget));
+		if (size == counts.length) {
+			int grown = size * 2;
+			starts = Arrays.copyOf(starts, grown);
+			authorLengths = Arrays.copyOf(authorLengths, grown);
+			ends = Arrays.copyOf(ends, grown);
+			counts = Arrays.copyOf(counts, grown);
+		}
+		starts[size] = arenaLength;
+		authorLengths[size] = authorLength;
+		System.arraycopy(buffer, authorStart, arena, arenaLength, authorLength);
+		arenaLength += authorLength;
+		System.arraycopy(buffer, start, arena, arenaLength, end - start);
+		arenaLength += end - start;
+		ends[size] = arenaLength;
+		counts[size++] = count;
+	} //end of add
+
+
+	/**
+	 * write
+	 * Writes the weighted edges of every author, in order of author and co-author ID.
+	 * The run files are deleted afterwards.
+	 * @param out    OutputStream for the edges
+	 * @param group  CoAuthorGroup used to weight and write each author's edges
+	 * @return       long with the number of edges written
+	 */
+	public long write(OutputStream out, CoAuthorGroup group) throws IOException {
+		return(write(new OutputStream[] {out}, group));
+	} //end of write
+
+
+	/**
+	 * write
+	 * Writes the weighted edges of every author to one of several shard outputs,
+	 * chosen by the author ID as in CoAuthorGroup.write.
+	 * @param outs   OutputStream for each shard
+	 * @param group  CoAuthorGroup used to weight and write each author's edges
+	 * @return       long with the number of edges written
+	 */
+	public long write(OutputStream[] outs, CoAuthorGroup group) throws IOException {
+		try {
+			if (runs.isEmpty()) {
+				// everything fit in memory
+				int[] order = sort();
+				long edges = 0;
+				for (int i = 0; i < size; i++) {
+					int row = order[i];
+					int authorEnd = starts[row] + authorLengths[row];
+					if (group.isEmpty() || !group.isAuthor(arena, starts[row], authorEnd)) {
+						edges += group.write(outs);
+						group.start(arena, starts[row], authorEnd);
+					}
+					group.addSorted(arena, authorEnd, ends[row], counts[row]);
+				}
+				edges += group.write(outs);
+				return(edges);
+			}
+			if (size > 0)
+				spill();
+			release();
+			while (runs.size() > MAX_MERGE_RUNS) {
+				ArrayList<File> merging = new ArrayList<File>(runs.subList(0, MAX_MERGE_RUNS));
+				runs.subList(0, MAX_MERGE_RUNS).clear();
+				File merged = createRun();
+				runs.add(merged);
+				OutputStream runOut = new BufferedOutputStream(new FileOutputStream(merged), RUN_BUFFER_SIZE);
+				try {
+					merge(merging, new OutputStream[] {runOut}, null);
+				} finally {
+					runOut.close();
+				}
+				for (File run : merging)
+					run.delete();
+			}
+			return(merge(runs, outs, group));
+		} finally {
+			for (File run : runs)
+				run.delete();
+			runs.clear();
+			release();
+		}
+	} //end of write
+
+
+	/**
+	 * getRunsWritten
+	 * @return  integer with the number of run files written, including merged runs
+	 */
+	public int getRunsWritten() {
+		return runsWritten;
+	}
+
+
+	/**
+	 * spill
+	 * Sorts the rows held in memory and writes them to a new run file, adding
+	 * together the counts of rows with the same author and co-author.
+	 */
+	private void spill() throws IOException {
+		int[] order = sort();
+		File run = createRun();
+		runs.add(run);
+		OutputStream out = new BufferedOutputStream(new FileOutputStream(run), RUN_BUFFER_SIZE);
+		try {
+			int i = 0;
+			while (i < size) {
+				int row = order[i];
+				long count = counts[row];
+				while (++i < size && compare(row, order[i]) == 0)
+					count += counts[order[i]];
+				out.write(arena, starts[row], authorLengths[row]);
+				out.write('\t');
+				out.write(arena, starts[row] + authorLengths[row], ends[row] - starts[row] - authorLengths[row]);
+				out.write('\t');
+				writeDigits(out, (int)Math.min(count, Integer.MAX_VALUE));
+				out.write('\n');
+			}
+		} finally {
+			out.close();
+		}
+		size = 0;
+		arenaLength = 0;
+	} //end of spill
+
+
+	/**
+	 * merge
+	 * Merges sorted run files.  With a group, the merged rows are weighted and
+	 * written as edges to the shard outputs; without one, they are written as a 
+	 * longer run to the first output.
+	 * @return  long with the number of edges written, or 0 when writing a run
+	 */
+	private long merge(ArrayList<File> files, OutputStream[] outs, CoAuthorGroup group) throws IOException {
+		DelimitedRowReader[] readers = new DelimitedRowReader[files.size()];
+		int[] heap = new int[files.size()];
+		int heapSize = 0;
+		long edges = 0;
+		try {
+			for (int i = 0; i < readers.length; i++) {
+				readers[i] = DelimitedRowReader.open(files.get(i), '\t');
+				if (nextRunRow(readers[i]))
+					heapSize = heapAdd(readers, heap, heapSize, i);
+			}
+			while (heapSize > 0) {
+				DelimitedRowReader reader = readers[heap[0]];
+				byte[] row = reader.getBuffer();
+				if (group == null) {
+					outs[0].write(row, reader.getFieldStart(0), reader.getFieldEnd(2) - reader.getFieldStart(0));
+					outs[0].write('\n');
+				} else {
+					if (group.isEmpty() || !group.isAuthor(row, reader.getFieldStart(0), reader.getFieldEnd(0))) {
+						edges += group.write(outs);
+						group.start(row, reader.getFieldStart(0), reader.getFieldEnd(0));
+					}
+					group.addSorted(row, reader.getFieldStart(1), reader.getFieldEnd(1), reader.parseInt(2));
+				}
+				if (nextRunRow(reader))
+					siftDown(readers, heap, 0, heapSize);
+				else {
+					heap[0] = heap[--heapSize];
+					siftDown(readers, heap, 0, heapSize);
+				}
+			}
+			if (group != null)
+				edges += group.write(outs);
+			return(edges);
+		} finally {
+			for (DelimitedRowReader reader : readers) {
+				try {reader.close();}catch(Exception e){}
+			}
+		}
+	} //end of merge
+
+
+	private static boolean nextRunRow(DelimitedRowReader reader) throws IOException {
+		while (reader.nextRow()) {
+			if (reader.getFieldCount() == 3)
+				return(true);
+		}
+		return(false);
+	} //end of nextRunRow
+
+
+	private static int heapAdd(DelimitedRowReader[] readers, int[] heap, int heapSize, int run) {
+		int index = heapSize;
+		heap[index] = run;
+		while (index > 0) {
+			int parent = (index - 1) >>> 1;
+			if (compareRows(readers[heap[index]], readers[heap[parent]]) >= 0)
+				break;
+			int swap = heap[index];
+			heap[index] = heap[parent];
+			heap[parent] = swap;
+			index = parent;
+		}
+		return(heapSize + 1);
+	} //end of heapAdd
+
+
+	private static void siftDown(DelimitedRowReader[] readers, int[] heap, int index, int heapSize) {
+		while (true) {
+			int child = 2 * index + 1;
+			if (child >= heapSize)
+				break;
+			if (child + 1 < heapSize && compareRows(readers[heap[child + 1]], readers[heap[child]]) < 0)
+				child++;
+			if (compareRows(readers[heap[child]], readers[heap[index]]) >= 0)
+				break;
+			int swap = heap[index];
+			heap[index] = heap[child];
+			heap[child] = swap;
+			index = child;
+		}
+	} //end of siftDown
+
+
+	/**
+	 * compareRows
+	 * Compares the current rows of two run readers by author and then co-author.
+	 */
+	private static int compareRows(DelimitedRowReader a, DelimitedRowReader b) {
+		int result = IndexFiles.compareBytes(a.getBuffer(), a.getFieldStart(0), a.getFieldEnd(0),
+				b.getBuffer(), b.getFieldStart(0), b.getFieldEnd(0));
+		if (result != 0)
+			return(result);
+		return(IndexFiles.compareBytes(a.getBuffer(), a.getFieldStart(1), a.getFieldEnd(1),
+				b.getBuffer(), b.getFieldStart(1), b.getFieldEnd(1)));
+	} //end of compareRows
+
+
+	/**
+	 * compare
+	 * Compares two rows held in memory by author and then co-author.
+	 */
+	private int compare(int a, int b) {
+		int authorEndA = starts[a] + authorLengths[a];
+		int authorEndB = starts[b] + authorLengths[b];
+		int result = IndexFiles.compareBytes(arena, starts[a], authorEndA, arena, starts[b], authorEndB);
+		if (result != 0)
+			return(result);
+		return(IndexFiles.compareBytes(arena, authorEndA, ends[a], arena, authorEndB, ends[b]));
+	} //end of compare
+
+
+	/**
+	 * sort
+	 * @return  the positions of the rows held in memory, sorted by author and co-author
+	 */
+	private int[] sort() {
+		int[] order = new int[size];
+		for (int i = 0; i < size; i++)
+			order[i] = i;
+		mergeSort(order, new int[size], 0, size);
+		return(order);
+	} //end of sort
+
+
+	private void mergeSort(int[] order, int[] work, int from, int to) {
+		if (to - from <= INSERTION_SORT_SIZE) {
+			for (int i = from + 1; i < to; i++) {
+				int row = order[i];
+				int j = i - 1;
+				while (j >= from && compare(order[j], row) > 0) {
+					order[j + 1] = order[j];
+					j--;
+				}
+				order[j + 1] = row;
+			}
+			return;
+		}
+		int middle = (from + to) >>> 1;
+		mergeSort(order, work, from, middle);
+		mergeSort(order, work, middle, to);
+		if (compare(order[middle - 1], order[middle]) <= 0)
+			return; // already in order
+		System.arraycopy(order, from, work, from, to - from);
+		int left = from;
+		int right = middle;
+		for (int i = from; i < to; i++) {
+			if (right >= to || (left < middle && compare(work[left], work[right]) <= 0))
+				order[i] = work[left++];
+			else
+				order[i] = work[right++];
+		}
+	} //end of mergeSort
+
+
+	private File createRun() throws IOException {
+		runsWritten++;
+		File run = File.createTempFile("coauthor-run", ".tsv", tempDirectory);
+		run.deleteOnExit();
+		return(run);
+	} //end of createRun
+
+
+	/**
+	 * release
+	 * Drops the rows held in memory and shrinks the arrays, so the memory can be
+	 * used by the merge.
+	 */
+	private void release() {
+		size = 0;
+		arenaLength = 0;
+		arena = new byte[0];
+		starts = new int[1];
+		authorLengths = new int[1];
+		ends = new int[1];
+		counts = new int[1];
+	} //end of release
+
+
+	private static void writeDigits(OutputStream out, int value) throws IOException {
+		String digits = Integer.toString(value);
+		for (int i = 0; i < digits.length(); i++)
+			out.write(digits.charAt(i));
+	} //end of writeDigits
+
+} //end of class CoAuthorAggregator
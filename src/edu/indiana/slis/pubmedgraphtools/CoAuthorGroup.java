@@ -0,0 +1,254 @@
+package edu.indiana.slis.pubmedgraphtools;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+
+/**
+ * CoAuthorGroup
+ * The co-authors of one author, collected while the grouped co-author file is
+ * read.  The author and co-author IDs are kept as bytes copied from the row
+ * buffer and the paper counts in an int array, so adding a row does not create
+ * any objects and the arrays are reused from one author to the next.
+ *
+ * Rows that repeat a co-author of the author, whether or not they are next to
+ * each other, are added together, so each co-author has one edge weighted by
+ * the total of its counts, and keeps the position of its first row.  The
+ * co-authors are found by an open-addressing hash table of their positions,
+ * whose slots are stamped with the group they were filled for, so the table is
+ * emptied for the next author without clearing it.
+ *
+ * Each co-author edge is weighted by its share of the author's papers with
+ * co-authors, normalized in double by WeightNormalizer as ContributedBy's
+ * weights are, so the weights of an author total 1 and any rounding difference
+ * goes to the co-author with the most papers, whose weight it changes the least.
+ * A tie goes to the co-author whose ID comes first in byte order, so the result
+ * does not depend on the order the rows were read in.  The edges are written in the order the
+ * co-authors were read.
+ */
+public class CoAuthorGroup {
+	private byte[] author = new byte[32];
+	private int authorLength = 0;
+	private byte[] ids = new byte[1024];     // co-author IDs, one after another
+	private int[] idEnds = new int[64];      // end of each co-author ID in ids
+	private int[] counts = new int[64];      // papers written with each co-author
+	private double[] weights = new double[64]; // the normalized weight of each co-author
+	private int size = 0;
+	private int[] table = new int[128];      // (co-author index + 1), by a hash of the ID
+	private int[] tableStamps = new int[128]; // the group each slot of the table was filled for
+	private int stamp = 1;                   // the current group
+	private byte[] line = new byte[4096];    // the formatted edges of the group
+	private byte[] lineSeparator = null;
+
+
+	/**
+	 * @param lineSeparator  String written after each edge
+	 */
+	public CoAuthorGroup(String lineSeparator) {
+		this.lineSeparator = lineSeparator.getBytes();
+	} //end of constructor
+
+
+	/**
+	 * start
+	 * Starts the group for a new author, dropping any co-authors of the previous one.
+	 * @param buffer  byte array holding the author ID
+	 * @param start   integer with the position of the first byte of the ID
+	 * @param end     integer with the position after the last byte of the ID
+	 */
+	public void start(byte[] buffer, int start, int end) {
+		authorLength = end - start;
+		if (authorLength > author.length)
+			author = new byte[authorLength * 2];
+		System.arraycopy(buffer, start, author, 0, authorLength);
+		size = 0;
+		if (++stamp == 0) {
+			// the stamps have wrapped around, so the old ones are cleared
+			Arrays.fill(tableStamps, 0);
+			stamp = 1;
+		}
+	} //end of start
+
+
+	/**
+	 * isAuthor
+	 * @return  true if the ID in the byte range is the author of this group
+	 */
+	public boolean isAuthor(byte[] buffer, int start, int end) {
+		if (end - start != authorLength)
+			return(false);
+		for (int i = 0; i < authorLength; i++) {
+			if (buffer[start + i] != author[i])
+				return(false);
+		}
+		return(true);
+	} //end of isAuthor
+
+
+	/**
+	 * add
+	 * Adds a co-author to the group, or adds the count to the co-author if it is
+	 * already in the group.
+	 * @param buffer  byte array holding the co-author ID
+	 * @param start   integer with the position of the first byte of the ID
+	 * @param end     integer with the position after the last byte of the ID
+	 * @param count   integer with the number of papers written with the co-author
+	 */
+	public void add(byte[] buffer, int start, int end, int count) {
+		int slot = findSlot(buffer, start, end);
+		if (tableStamps[slot] == stamp) {
+			counts[table[slot] - 1] += count;
+			return;
+		}
+		if (size == counts.length) {
+			idEnds = Arrays.copyOf(idEnds, size * 2);
+			counts = Arrays.copyOf(counts, size * 2);
+		}
+		int idStart = (size == 0)? 0 : idEnds[size - 1];
+		int idEnd = idStart + (end - start);
+		if (idEnd > ids.length)
+			ids = Arrays.copyOf(ids, Math.max(idEnd, ids.length * 2));
+		System.arraycopy(buffer, start, ids, idStart, end - start);
+		idEnds[size] = idEnd;
+		counts[size] = count;
+		table[slot] = size + 1;
+		tableStamps[slot] = stamp;
+		size++;
+		if (size * 2 > table.length)
+			growTable();
+	} //end of add
+
+
+	/**
+	 * findSlot
+	 * @return  the slot of the table holding the co-author, or the empty slot where
+	 *          it would be added
+	 */
+	private int findSlot(byte[] buffer, int start, int end) {
+		int mask = table.length - 1;
+		int slot = hash(buffer, start, end) & mask;
+		while (tableStamps[slot] == stamp) {
+			int index = table[slot] - 1;
+			int idStart = (index == 0)? 0 : idEnds[index - 1];
+			if (IndexFiles.compareBytes(ids, idStart, idEnds[index], buffer, start, end) == 0)
+				return(slot);
+			slot = (slot + 1) & mask;
+		}
+		return(slot);
+	} //end of findSlot
+
+
+	/**
+	 * growTable
+	 * Doubles the table and fills it again from the co-authors of the group.
+	 */
+	private void growTable() {
+		table = new int[table.length * 2];
+		tableStamps = new int[table.length];
+		for (int index = 0; index < size; index++) {
+			int idStart = (index == 0)? 0 : idEnds[index - 1];
+			int slot = findSlot(ids, idStart, idEnds[index]);
+			table[slot] = index + 1;
+			tableStamps[slot] = stamp;
+		}
+	} //end of growTable
+
+
+	private int compareIds(int a, int b) {
+		int startA = (a == 0)? 0 : idEnds[a - 1];
+		int startB = (b == 0)? 0 : idEnds[b - 1];
+		return(IndexFiles.compareBytes(ids, startA, idEnds[a], ids, startB, idEnds[b]));
+	} //end of compareIds
+
+
+	private static int hash(byte[] bytes, int start, int end) {
+		int h = 0;
+		for (int i = start; i < end; i++)
+			h = 31 * h + bytes[i];
+		return(h ^ (h >>> 16));
+	} //end of hash
+
+
+	/**
+	 * addSorted
+	 * Adds a co-author to a group whose rows arrive sorted by co-author, so the
+	 * rows for the same co-author are next to each other.  The count of such a
+	 * row is added to the co-author already in the group without looking it up.
+	 */
+	public void addSorted(byte[] buffer, int start, int end, int count) {
+		if (size > 0) {
+			int lastStart = (size == 1)? 0 : idEnds[size - 2];
+			if (IndexFiles.compareBytes(ids, lastStart, idEnds[size - 1], buffer, start, end) == 0) {
+				counts[size - 1] += count;
+				return;
+			}
+		}
+		add(buffer, start, end, count);
+	} //end of addSorted
+
+
+	public boolean isEmpty() {
+		return(size == 0);
+	}
+
+	public int size() {
+		return size;
+	}
+
+
+	/**
+	 * write
+	 * Writes the edges of the group to one of several shard outputs, chosen by a
+	 * hash of the author ID (see Shards), so all of an author's edges are in the
+	 * same shard.
+	 * @return  integer with the number of edges written
+	 */
+	public int write(OutputStream[] outs) throws IOException {
+		if (outs.length == 1 || size == 0)
+			return(write(outs[0]));
+		return(write(outs[Shards.shardOf(author, 0, authorLength, outs.length)]));
+	} //end of write
+
+
+	/**
+	 * write
+	 * Writes an edge from the author to each co-author, weighted by the co-author's
+	 * share of the papers, with a single write to the output.
+	 * @return  integer with the number of edges written
+	 */
+	public int write(OutputStream out) throws IOException {
+		if (weights.length < size)
+			weights = new double[counts.length];
+		int largest = 0;
+		for (int i = 0; i < size; i++) {
+			weights[i] = counts[i];
+			if (counts[i] > counts[largest] || counts[i] == counts[largest] && compareIds(i, largest) < 0)
+				largest = i;
+		}
+		WeightNormalizer.normalize(weights, 0, size, largest);
+
+		int length = 0;
+		int idStart = 0;
+		for (int i = 0; i < size; i++) {
+			String weight = Double.toString(weights[i]);
+			int needed = length + authorLength + (idEnds[i] - idStart) + weight.length() + 2 + lineSeparator.length;
+			if (needed > line.length)
+				line = Arrays.copyOf(line, Math.max(needed, line.length * 2));
+			System.arraycopy(author, 0, line, length, authorLength);
+			length += authorLength;
+			line[length++] = ',';
+			System.arraycopy(ids, idStart, line, length, idEnds[i] - idStart);
+			length += idEnds[i] - idStart;
+			line[length++] = ',';
+			for (int c = 0; c < weight.length(); c++)
+				line[length++] = (byte)weight.charAt(c);
+			System.arraycopy(lineSeparator, 0, line, length, lineSeparator.length);
+			length += lineSeparator.length;
+			idStart = idEnds[i];
+		}
+		out.write(line, 0, length);
+		return(size);
+	} //end of write
+
+} //end of class CoAuthorGroup
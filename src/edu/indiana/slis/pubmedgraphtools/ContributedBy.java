@@ -4,70 +4,30 @@ package edu.indiana.slis.pubmedgraphtools;
 import java.io.BufferedReader;
 import java.io.BufferedWriter;
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.io.PrintWriter;
+import java.lang.reflect.Method;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 
 import org.apache.log4j.Logger;
 import org.apache.log4j.PropertyConfigurator;
 
 
-class Contributor {
-	String contributorId = null;
-	double weight = 0.0;
-	
-	public Contributor(String contributorId, double weight) {
-		this.contributorId = contributorId;
-		this.weight = weight;
-	} //end of constructor
-	
-	/**
-	 * updateWeight
-	 * The initial weight when constructed was based on all of the 
-	 * contributors in the file totalling to 1.  Since we are using 
-	 * a subset of those contributors, the denominator is less than 1,
-	 * so we need to adjust the weight.  The new weight value is returned.
-	 * 
-	 * @param denominator  double that should be the denominator for 
-	 *                     adjusting the weight.  This would be the 
-	 *                     total weight for the subset of the contributors
-	 *                     included for the MeSH term. 
-	 * @return             double with the new weight value
-	 */
-	public double updateWeight(double denominator) {
-		if(denominator != 0)
-			weight = weight / denominator;
-		return(weight);
-	} //end of updateWeight
-	
-	/** 
-	 * adjustWeight
-	 * When the contributor weights are being adjusted, 
-	 * they may total to something slightly less than one,
-	 * so the difference is applied to one of the contributors
-	 * (it should be the first and largest contributor).
-	 * @param adjustment  double with the adjustment to the weight
-	 * @return            double with the new weight value
-	 */
-	public double adjustWeight(double adjustment) {
-		weight += adjustment;
-		return(weight);
-	} //end of adjustWeight
-
-	public String getContributorId() {
-		return contributorId;
-	}
-
-	public double getWeight() {
-		return weight;
-	}
-
-} //end of class Contributor
-
-
 /**
  * 
  * @author Rohit Ingle, Scott Jensen, Yingying 
@@ -78,13 +38,53 @@ class Contributor {
 //this code helps to generate the contributedBy relationship file
 public class ContributedBy {
 	protected final static String LOG4J_PATH_PROPERTY = "pubmed.log4j"; //name of system property to check
+	protected final static String EXCLUSION_INDEX_PROPERTY = "pubmed.exclusionIndex"; // true to save and reuse an index of the exclusions
 	// Logger object for logging in this class
 	protected static Logger log = Logger.getLogger(ContributedBy.class.getName());
-	private ArrayList<File> dataDirectories = null;
+	public final static String EXECUTOR_FORK_JOIN = "forkjoin"; // executor types for parallel processing
+	public final static String EXECUTOR_VIRTUAL = "virtual";
+	public final static String FORMAT_TEXT = "text"; // output formats
+	public final static String FORMAT_BINARY = "binary";
+	public final static String SHARD_BY_TERM = "term"; // keys for sharded output
+	public final static String SHARD_BY_CONTRIBUTOR = "contributor";
+	private final static int SHARD_BUFFER_SIZE = 1 << 20; // characters buffered for each shard
+	private final static int PENDING_PER_THREAD = 4; // files that may be in flight for each worker thread
+	private final static int PROGRESS_INTERVAL = 1000; // files written between progress messages
+	private final static int INITIAL_CONTRIBUTORS = 1024; // capacity of the contributor list of a file
+	private final static int DISCOVERY_QUEUE_SIZE = 4096; // files that may be found ahead of the processing
+	private final static String LINE_SEPARATOR = System.getProperty("line.separator");
+	// names of the optional settings accepted by main
+	private final static HashSet<String> OPTIONS = new HashSet<String>(Arrays.asList(
+			"-threads", "-executor", "-topk", "-mapped", "-metrics", "-descriptorLabels", "-qualifierLabels",
+			"-manifest", "-format", "-shards", "-shardBy", "-include", "-exclude",
+			"-byType", "-typeLimits", "-typeExclusions"));
+	private File dataDir = null;
 	private int maxContribute = 0;
-	private HashSet<String> excludedIds = null; // used to create a set of IDs that should be excluded when 
+	private int[] limits = null; // the limit of each output in ascending order, the last being maxContribute
+	private ExcludedIds excludedIds = null; // used to create a set of IDs that should be excluded when 
 	                                    // processing each file.
 	private boolean exclusions = false; //default to there being no IDs to exclude
+	private String excludedIDFileName = null;
+	private int threads = 1; // number of worker threads used to process the data files
+	private String executorType = EXECUTOR_FORK_JOIN;
+	private boolean selectTopK = false; // true if the files are not sorted by descending weight
+	private boolean mappedInput = false; // true to memory map the larger data files
+	private String metricsFileName = null; // file for the JSON summary of a run
+	private RunMetrics metrics = null;     // counters for the current run
+	private LabelSource descriptorLabels = null; // labels added to each edge, if set
+	private LabelSource qualifierLabels = null;
+	private String outputFormat = FORMAT_TEXT;
+	private int shards = 1;                      // number of shard files the edges are split between
+	private boolean shardByContributor = false;  // false to shard by MeSH term
+	private String manifestFileName = null; // manifest used to reuse the edges of unchanged files
+	private FileManifest manifest = null;   // the manifest of the current run
+	private String[] includeGlobs = null;   // names of the data files to use, if set
+	private String[] excludeGlobs = null;   // names of the data files to skip
+	private boolean byType = false;         // true to write each contributor type to its own outputs
+	private HashMap<String, int[]> typeLimits = new HashMap<String, int[]>();             // limits set for a type
+	private HashMap<String, ExcludedIds> typeExclusions = new HashMap<String, ExcludedIds>(); // exclusions set for a type
+	private HashMap<String, TypeRoute> routes = null; // the route of each type in the current run
+	private long filesWritten = 0;
 	                                      
 	
 	private boolean initialized = false;
@@ -111,19 +111,22 @@ public class ContributedBy {
 	public ContributedBy(String dataPath, int maxContribute, String excludedIDFileName) {
 		setupLogging();
 		try {
-			// put the top-level data directory into the list of data directories
+			// the top-level data directory, which is scanned for the data files
 			File dataDir = new File(dataPath);
 			if (!dataDir.isDirectory())
 				return;  
-			dataDirectories = new ArrayList<File>();
-			dataDirectories.add(dataDir);
+			this.dataDir = dataDir;
 			// Determine if there is a limit on the number of Contribute By 
 			// edges for each qualified descriptor.  If zero, set to the maximum
 			// integer value.
 			this.maxContribute = (maxContribute > 0)? maxContribute : Integer.MAX_VALUE;
+			this.limits = new int[] {this.maxContribute};
 			// If there are IDs that should be excluded, populate that set of IDs
-			if (excludedIDFileName != null)
-				exclusions = loadExclusions(excludedIDFileName);
+			if (excludedIDFileName != null) {
+				excludedIds = loadExclusions(excludedIDFileName);
+				exclusions = (excludedIds != null);
+			}
+			this.excludedIDFileName = excludedIDFileName;
 			log.info("Processed using data from the directory " + 
 					dataPath + " with a maximum of " + 
 					maxContribute + " contributors.");
@@ -160,31 +163,297 @@ public class ContributedBy {
 	} //end of setupLogging
 	
 	
-	private boolean loadExclusions(String excludedIDFileName) throws IOException {
-		BufferedReader reader = null;
+	/**
+	 * setThreads
+	 * Sets the number of worker threads used to read, normalize and format the 
+	 * data files.  With more than one thread, the files are processed in parallel,
+	 * but the edges are still written in the order the files are found, so the 
+	 * output is the same as a single-threaded run.
+	 * @param threads  integer with the number of worker threads (1 processes the 
+	 *                 files on the calling thread)
+	 */
+	public void setThreads(int threads) {
+		this.threads = (threads > 0)? threads : 1;
+	} //end of setThreads
+	
+	
+	/**
+	 * setExecutorType
+	 * @param executorType  String with either EXECUTOR_FORK_JOIN or EXECUTOR_VIRTUAL. 
+	 *                      Virtual threads require Java 21 or later; on older runtimes
+	 *                      a fork-join pool is used instead.
+	 */
+	public void setExecutorType(String executorType) {
+		if (!EXECUTOR_FORK_JOIN.equals(executorType) && !EXECUTOR_VIRTUAL.equals(executorType))
+			throw new IllegalArgumentException("Unknown executor type: " + executorType);
+		this.executorType = executorType;
+	} //end of setExecutorType
+	
+	
+	/**
+	 * setLimits
+	 * Writes an output for each of several limits on the number of contributors in 
+	 * one pass over the data files.  Each file is read up to the largest limit, and 
+	 * the first contributors up to each limit have their weights adjusted on their 
+	 * own, so each output is the same as a run with that limit alone.  With more than
+	 * one limit, the output for a limit of n is written to name-topn.ext (name-all.ext
+	 * for no limit) rather than to the output file name.ext passed to process.
+	 * @param limits  int array with the limits, where 0 is no limit
+	 */
+	public void setLimits(int[] limits) {
+		this.limits = sortLimits(limits);
+		maxContribute = this.limits[this.limits.length - 1];
+	} //end of setLimits
+	
+	
+	/**
+	 * sortLimits
+	 * @return  the limits in ascending order without duplicates, with 0 (no limit)
+	 *          replaced by Integer.MAX_VALUE
+	 */
+	private static int[] sortLimits(int[] limits) {
+		TreeSet<Integer> sorted = new TreeSet<Integer>();
+		for (int limit : limits) {
+			if (limit < 0)
+				throw new IllegalArgumentException("The limit " + limit + " is negative.");
+			sorted.add((limit > 0)? limit : Integer.MAX_VALUE);
+		}
+		if (sorted.isEmpty())
+			throw new IllegalArgumentException("No limits were given.");
+		int[] ascending = new int[sorted.size()];
+		int i = 0;
+		for (Integer limit : sorted)
+			ascending[i++] = limit;
+		return(ascending);
+	} //end of sortLimits
+	
+	
+	/**
+	 * setSelectTopK
+	 * By default the first maxContribute rows of each file are used, which assumes
+	 * that the PageRank files are sorted by descending weight.  When top-K selection
+	 * is on, every row of a file is read and the maxContribute rows with the largest
+	 * weights are used, so unsorted PageRank output can be processed directly.
+	 * @param selectTopK  boolean that is true to select the rows with the largest weights
+	 */
+	public void setSelectTopK(boolean selectTopK) {
+		this.selectTopK = selectTopK;
+	} //end of setSelectTopK
+	
+	
+	/**
+	 * setMappedInput
+	 * When mapped input is on, data files of at least DelimitedRowReader.DEFAULT_MAP_THRESHOLD
+	 * bytes are read through a memory-mapped FileChannel; smaller files are still read
+	 * with a stream.  Either way the rows are parsed as bytes without decoding characters.
+	 * @param mappedInput  boolean that is true to memory map the larger data files
+	 */
+	public void setMappedInput(boolean mappedInput) {
+		this.mappedInput = mappedInput;
+	} //end of setMappedInput
+	
+	
+	/**
+	 * setMetricsFileName
+	 * The counters and timers of each run are available through JMX while the run is 
+	 * in progress and are logged as JSON at the end.  If a metrics file is set, the 
+	 * JSON summary is also written to that file.
+	 * @param metricsFileName  String with the full path of the JSON file, or null
+	 */
+	public void setMetricsFileName(String metricsFileName) {
+		this.metricsFileName = metricsFileName;
+	} //end of setMetricsFileName
+	
+	
+	/**
+	 * setLabels
+	 * When labels are set, each edge is followed by the labels of its MeSH descriptor
+	 * and qualifier as two more CSV columns, which are empty for an ID without a label.
+	 * @param descriptorLabels  LabelSource for the descriptor IDs, or null
+	 * @param qualifierLabels   LabelSource for the qualifier IDs, or null
+	 */
+	public void setLabels(LabelSource descriptorLabels, LabelSource qualifierLabels) {
+		this.descriptorLabels = descriptorLabels;
+		this.qualifierLabels = qualifierLabels;
+	} //end of setLabels
+	
+	
+	/**
+	 * setOutputFormat
+	 * The edges are written as CSV text by default.  The binary format writes them as
+	 * fixed-width records with the MeSH terms and contributor IDs replaced by int 
+	 * indexes, and the terms and IDs in node tables next to the output (see 
+	 * BinaryEdgeSink), so the output is smaller and can be loaded without parsing.
+	 * @param outputFormat  String with either FORMAT_TEXT or FORMAT_BINARY
+	 */
+	public void setOutputFormat(String outputFormat) {
+		if (!FORMAT_TEXT.equals(outputFormat) && !FORMAT_BINARY.equals(outputFormat))
+			throw new IllegalArgumentException("Unknown output format: " + outputFormat);
+		this.outputFormat = outputFormat;
+	} //end of setOutputFormat
+	
+	
+	/**
+	 * setShards
+	 * With more than one shard, the edges are split between that many files by a hash
+	 * of either the MeSH term or the contributor ID (see Shards), so they can be 
+	 * imported in parallel.  Shard i of the output name.ext is written to name-00i.ext,
+	 * and each shard has its own large buffer.  The edges in each shard are in the 
+	 * order the files are found.
+	 * @param shards   integer with the number of shards (1 for a single output file)
+	 * @param shardBy  String with either SHARD_BY_TERM or SHARD_BY_CONTRIBUTOR
+	 */
+	public void setShards(int shards, String shardBy) {
+		if (!SHARD_BY_TERM.equals(shardBy) && !SHARD_BY_CONTRIBUTOR.equals(shardBy))
+			throw new IllegalArgumentException("Unknown shard key: " + shardBy);
+		this.shards = (shards > 0)? shards : 1;
+		this.shardByContributor = SHARD_BY_CONTRIBUTOR.equals(shardBy);
+	} //end of setShards
+	
+	
+	/**
+	 * setManifestFileName
+	 * With a manifest, each run records the size, time and hash of every data file
+	 * and where its edges are in the output.  The next run only reads the data files
+	 * that are new or have changed and copies the edges of the others from the 
+	 * previous output, and a run that stopped part way is resumed after the last 
+	 * file it wrote.  The output is written to the output name with .tmp added and
+	 * only replaces the output once the run has finished.
+	 * 
+	 * The files are still written in the order they are found, so the output is 
+	 * the same as a run without a manifest.  The manifest is only reused with the 
+	 * same limit, top-K setting and exclusion file; after changing a label table,
+	 * delete the manifest to write every file again.  A manifest can only be used
+	 * with text output to a single file, so not with shards, several limits or 
+	 * routing by type.
+	 * @param manifestFileName  String with the full path of the manifest, or null
+	 */
+	public void setManifestFileName(String manifestFileName) {
+		this.manifestFileName = manifestFileName;
+	} //end of setManifestFileName
+	
+	
+	/**
+	 * setFileGlobs
+	 * Selects the data files by glob patterns on their names, for example author_* 
+	 * to use only the files of authors, or venue_* as an exclusion to skip venues.
+	 * A file is used if it matches one of the include patterns (or none were set) 
+	 * and none of the exclude patterns.  Directories are always scanned.
+	 * @param includeGlobs  String array of patterns for the files to use, or null for all files
+	 * @param excludeGlobs  String array of patterns for the files to skip, or null
+	 */
+	public void setFileGlobs(String[] includeGlobs, String[] excludeGlobs) {
+		// check the patterns now rather than on the discovery thread
+		new FileDiscovery(dataDir, 1).setGlobs(includeGlobs, excludeGlobs);
+		this.includeGlobs = includeGlobs;
+		this.excludeGlobs = excludeGlobs;
+	} //end of setFileGlobs
+	
+	
+	/**
+	 * setTypeRouting
+	 * The files are named type_descriptorId_qualifierId, where the type is the kind 
+	 * of contributor (such as author, paper or venue).  With routing by type, the 
+	 * edges of each type are written to their own outputs, with -type added to the 
+	 * output file name before its extension (and -topn after it with several limits),
+	 * so every type is covered by one scan of the data directory and one pool of 
+	 * workers.  The outputs of a type are opened when its first file is found.
+	 * @param byType  boolean that is true to write each type to its own outputs
+	 */
+	public void setTypeRouting(boolean byType) {
+		this.byType = byType;
+	} //end of setTypeRouting
+	
+	
+	/**
+	 * setTypeLimits
+	 * Sets the limits used for the files of one contributor type in place of the 
+	 * limits of the run, and turns on routing by type.
+	 * @param type    String with the type prefix of the file names, such as venue
+	 * @param limits  int array with the limits, where 0 is no limit, as for setLimits
+	 */
+	public void setTypeLimits(String type, int[] limits) {
+		typeLimits.put(type, sortLimits(limits));
+		byType = true;
+	} //end of setTypeLimits
+	
+	
+	/**
+	 * setTypeExclusions
+	 * Sets the IDs excluded from the files of one contributor type in place of the 
+	 * exclusions of the run, and turns on routing by type.
+	 * @param type                String with the type prefix of the file names
+	 * @param excludedIDFileName  String with the full path to the file of IDs to exclude 
+	 *                            for the type, or null to exclude no IDs for it
+	 */
+	public void setTypeExclusions(String type, String excludedIDFileName) throws IOException {
+		ExcludedIds typeIds = null;
+		if (excludedIDFileName != null) {
+			typeIds = loadExclusions(excludedIDFileName);
+			if (typeIds == null)
+				throw new IOException("The exclusion file " + excludedIDFileName + " cannot be read.");
+		}
+		typeExclusions.put(type, typeIds);
+		byType = true;
+	} //end of setTypeExclusions
+	
+	
+	/**
+	 * getMetrics
+	 * @return  the metrics of the current or most recent run, or null before a run
+	 */
+	public RunMetrics getMetrics() {
+		return metrics;
+	} //end of getMetrics
+	
+	
+	/**
+	 * loadExclusions
+	 * Loads the IDs to be excluded.  If the system property pubmed.exclusionIndex is 
+	 * true, the IDs are read from a saved index next to the exclusion file (the file 
+	 * name with .idx added) when that index is up to date, and otherwise the index is 
+	 * saved after the text file is read so later runs can skip parsing it.
+	 * @return  the excluded IDs, or null if the file cannot be read
+	 */
+	private ExcludedIds loadExclusions(String excludedIDFileName) throws IOException {
+		ExcludedIds excludedIds = null;
 		try {
 			File exclusionsFile = new File(excludedIDFileName);
 			if (!exclusionsFile.canRead() )
-				return(false);
-			excludedIds = new HashSet<String>(1000);
-			reader = new BufferedReader(new FileReader(exclusionsFile));
-			String line = reader.readLine();
-			while (line != null) {
-				String id = line.trim();
-				if (id.length() > 0)
-					excludedIds.add(id);
-				line = reader.readLine();
-			} //loop through the IDs to be excluded
-			log.info("the excluded IDs were loaded form the file: " + excludedIDFileName);
-			return(true); //exclusions were successfully loaded
+				return(null);
+			boolean useIndex = Boolean.getBoolean(EXCLUSION_INDEX_PROPERTY);
+			File indexFile = ExcludedIds.getIndexFile(exclusionsFile);
+			if (useIndex) {
+				try {
+					excludedIds = ExcludedIds.readIndex(indexFile, exclusionsFile);
+				} catch (IOException e) {
+					log.warn("The index of excluded IDs " + indexFile + 
+							" could not be read, so the exclusion file is used: " + e.getMessage());
+				}
+			}
+			if (excludedIds != null)
+				log.info("the excluded IDs were loaded from the index: " + indexFile);
+			else {
+				excludedIds = ExcludedIds.readText(exclusionsFile);
+				log.info("the excluded IDs were loaded form the file: " + excludedIDFileName);
+				if (useIndex) {
+					try {
+						excludedIds.writeIndex(indexFile, exclusionsFile);
+						log.info("the index of excluded IDs was saved to: " + indexFile);
+					} catch (IOException e) {
+						log.warn("The index of excluded IDs could not be saved: " + e.getMessage());
+					}
+				}
+			}
+			log.info(excludedIds.size() + " excluded IDs (" + excludedIds.getNumericCount() + 
+					" numeric, stored as " + (excludedIds.isBitmap()? "a bitmap" : "a sorted array") + 
+					") use about " + (excludedIds.getMemorySize() / 1024) + " KB.");
+			return(excludedIds); //exclusions were successfully loaded
 		} catch (Exception e) {
-			try {excludedIds.clear();}catch(Exception ex){}
 			throw new IOException("The exclusion file: " + 
 					excludedIDFileName + 
 					" could not be loaded due to an exception: " + 
 					e.getMessage(), e);
-		} finally {
-			try {reader.close();}catch(Exception e){}
 		}
 	} //end of loadExclusions
 	
@@ -193,51 +462,651 @@ public class ContributedBy {
 	 * @param outFileName   String containing the full path and name of the output file to be written.
 	 */
 	public void process(String outFileName) throws Exception {
-		PrintWriter writer = null;
-		File currentDir = null;
+		FileDiscovery discovery = null;
+		FileDiscovery.DataFile dataFile = null;
+		ExecutorService executor = null;
+		ArrayDeque<PendingFile> pending = new ArrayDeque<PendingFile>();
+		boolean finished = false;
 		if (!initialized)
 			return;
 		
+		routes = new HashMap<String, TypeRoute>();
 		try {
 			File outFile = new File(outFileName);
-			outFile.createNewFile();
-			if (!outFile.canWrite()) {
-				String msg = "The file " + outFileName + 
-						" cannot be written to, so the data could not be processed.";
-				log.error(msg);
-				throw new IOException(msg);
+			File workingFile = outFile;
+			long resumeAt = 0;
+			if (manifestFileName != null && 
+					(!FORMAT_TEXT.equals(outputFormat) || shards > 1 || limits.length > 1 || byType))
+				throw new IOException("A manifest can only be used with text output to a single file.");
+			if (manifestFileName != null) {
+				manifest = new FileManifest(new File(manifestFileName), outFile, getManifestSettings());
+				resumeAt = manifest.open();
+				workingFile = manifest.getWorkingFile();
+				if (resumeAt > 0)
+					log.info("Resuming after the " + manifest.getCommittedCount() + 
+							" files already written to " + workingFile);
 			}
-			writer = new PrintWriter (outFile);
-			while (!dataDirectories.isEmpty()) {
-				currentDir = dataDirectories.remove(0);
-				String[] dirContents = currentDir.list();
-				for (int i = 0; i < dirContents.length; i++) {
-					File currentFile = new File(currentDir, dirContents[i]);
-					// if the content is a child directory, add it to the list of 
-					// directories to process, otherwise process the file.
-					if (currentFile.isDirectory())
-						dataDirectories.add(currentFile);
-					else {
-						if (maxContribute > 0)
-							processLimitedFile(writer, currentFile);
+			if (!byType) {
+				// the shard and limit files are checked as they are opened
+				if (shards == 1 && limits.length == 1) {
+					workingFile.createNewFile();
+					if (!workingFile.canWrite()) {
+						String msg = "The file " + workingFile + 
+								" cannot be written to, so the data could not be processed.";
+						log.error(msg);
+						throw new IOException(msg);
 					}
-				} // loop through the directory contents
-				dirContents = null;
-			} //loop through the data directories
+				}
+				// every file uses the same route
+				TypeRoute route = createRoute(null);
+				routes.put(null, route);
+				if (limits.length == 1)
+					route.sinks[0] = openSink(workingFile, resumeAt);
+				else {
+					for (int i = 0; i < limits.length; i++)
+						route.sinks[i] = openSink(getLimitFile(outFile, limits[i]), 0);
+				}
+			}
+			metrics = new RunMetrics();
+			try {
+				metrics.register(outFile.getName());
+			} catch (Exception e) {
+				log.warn("The run metrics could not be registered with JMX: " + e.getMessage());
+			}
+			log.info("The weights are normalized with the " + WeightNormalizer.getKernelName() + " kernel.");
+			if (threads > 1)
+				executor = createExecutor();
+			// The directories are scanned on their own thread while the files 
+			// already found are processed.
+			discovery = new FileDiscovery(dataDir, DISCOVERY_QUEUE_SIZE);
+			discovery.setGlobs(includeGlobs, excludeGlobs);
+			discovery.start();
+			while ((dataFile = discovery.next()) != null) {
+				File currentFile = dataFile.getFile();
+				metrics.fileDiscovered();
+				FileManifest.Entry entry = (manifest != null)? 
+						manifest.check(currentFile, dataFile.getSize(), dataFile.getModified()) : null;
+				if (entry != null && entry.getState() == FileManifest.Entry.COMMITTED)
+					continue; // already written by the run being resumed
+				if (entry != null && entry.getState() == FileManifest.Entry.COPY)
+					metrics.fileReused();
+				TypeRoute route = getRoute(currentFile, outFile);
+				if (executor == null)
+					writeEdges(route, processFile(currentFile, entry, route), entry);
+				else {
+					// Only a bounded number of files are in flight at once, and 
+					// the results are written in the order the files were found.
+					if (entry != null && entry.getState() == FileManifest.Entry.COPY)
+						pending.add(new PendingFile(route, entry, 
+								CompletableFuture.completedFuture((EdgeBlock)new CopiedEdges(entry))));
+					else
+						pending.add(new PendingFile(route, entry, 
+								executor.submit(new FileTask(currentFile, entry, route))));
+					if (pending.size() >= threads * PENDING_PER_THREAD)
+						writePending(pending.remove());
+				}
+			} //loop through the data files
+			while (!pending.isEmpty())
+				writePending(pending.remove());
+			for (TypeRoute route : routes.values()) {
+				for (EdgeSink sink : route.sinks)
+					sink.close();
+			}
+			metrics.setBytesWritten(getBytesWritten());
+			if (manifest != null)
+				manifest.finish();
+			finished = true;
+			metrics.finish();
+			reportMetrics();
 		} catch(Exception e) {
 			String msg = "An error occurred in processing the data files, so" + 
 					" the output file is likely to be incomplete.";
 			log.error(msg,e);
 			throw new Exception(msg, e);
 		} finally {
-			try {
-				writer.flush();
-				writer.close();
-			} catch(Exception e){}
+			if (discovery != null)
+				discovery.close();
+			if (executor != null) {
+				for (PendingFile file : pending)
+					file.edges.cancel(true);
+				executor.shutdownNow();
+			}
+			if (metrics != null)
+				metrics.unregister();
+			for (TypeRoute route : routes.values()) {
+				for (EdgeSink sink : route.sinks) {
+					try {sink.close();}catch(Exception e){}
+				}
+			}
+			if (manifest != null && !finished)
+				manifest.close(); // the next run resumes from the journal
+			manifest = null;
 		}
 	} //end of process
 	
 	
+	/**
+	 * createRoute
+	 * @param type  String with a contributor type, or null for the settings of the run
+	 * @return      the route of the type, with the limits and exclusions set for it or 
+	 *              else those of the run, and its outputs not yet opened
+	 */
+	private TypeRoute createRoute(String type) {
+		int[] routeLimits = typeLimits.containsKey(type)? typeLimits.get(type) : limits;
+		ExcludedIds routeExclusions = typeExclusions.containsKey(type)? 
+				typeExclusions.get(type) : (exclusions? excludedIds : null);
+		return(new TypeRoute(type, routeLimits, routeExclusions));
+	} //end of createRoute
+	
+	
+	/**
+	 * getRoute
+	 * @return  the route of a data file, which is the same for every file unless the
+	 *          files are routed by type, when the outputs of a type are opened the 
+	 *          first time one of its files is found
+	 */
+	private TypeRoute getRoute(File currentFile, File outFile) throws IOException {
+		if (!byType)
+			return(routes.get(null));
+		String type = getType(currentFile);
+		TypeRoute route = routes.get(type);
+		if (route != null)
+			return(route);
+		route = createRoute(type);
+		routes.put(type, route);
+		File typeFile = getTypeFile(outFile, type);
+		for (int i = 0; i < route.limits.length; i++)
+			route.sinks[i] = openSink((route.limits.length == 1)? typeFile : getLimitFile(typeFile, route.limits[i]), 0);
+		log.info("The " + type + " files are written to " + typeFile + " with at most " + 
+				route.maxContribute + " contributors" + 
+				((route.excludedIds == null)? "" : " and " + route.excludedIds.size() + " excluded IDs") + ".");
+		return(route);
+	} //end of getRoute
+	
+	
+	/**
+	 * openSink
+	 * Opens the output in the format that was set.
+	 * @param outFile   File to write the edges to
+	 * @param position  long with the length of a text output being resumed, or 0
+	 */
+	private EdgeSink openSink(File outFile, long position) throws IOException {
+		if (shards == 1) {
+			if (FORMAT_BINARY.equals(outputFormat))
+				return(new BinaryEdgeSink(outFile));
+			return(new TextEdgeSink(new FileOutputStream(outFile, position > 0), position, LINE_SEPARATOR));
+		}
+		EdgeSink[] shardSinks = new EdgeSink[shards];
+		try {
+			for (int i = 0; i < shards; i++) {
+				File shardFile = Shards.getShardFile(outFile, i);
+				if (FORMAT_BINARY.equals(outputFormat))
+					shardSinks[i] = new BinaryEdgeSink(shardFile);
+				else
+					shardSinks[i] = new TextEdgeSink(new FileOutputStream(shardFile), 0, 
+							LINE_SEPARATOR, SHARD_BUFFER_SIZE);
+			}
+		} catch (IOException e) {
+			for (EdgeSink shardSink : shardSinks) {
+				try {shardSink.close();}catch(Exception closeError){}
+			}
+			throw e;
+		}
+		return(new ShardedEdgeSink(shardSinks, shardByContributor));
+	} //end of openSink
+	
+	
+	/**
+	 * getLimitFile
+	 * @return  the output for one of several limits, with -top and the limit (or -all
+	 *          for no limit) added to the name before its extension
+	 */
+	static File getLimitFile(File outFile, int limit) {
+		return(addSuffix(outFile, (limit == Integer.MAX_VALUE)? "-all" : "-top" + limit));
+	} //end of getLimitFile
+	
+	
+	/**
+	 * getTypeFile
+	 * @return  the output for one contributor type, with - and the type added to the
+	 *          name before its extension
+	 */
+	static File getTypeFile(File outFile, String type) {
+		return(addSuffix(outFile, "-" + type));
+	} //end of getTypeFile
+	
+	
+	private static File addSuffix(File outFile, String suffix) {
+		String name = outFile.getName();
+		int dot = name.lastIndexOf('.');
+		String suffixedName = (dot > 0)? name.substring(0, dot) + suffix + name.substring(dot) : name + suffix;
+		return(new File(outFile.getAbsoluteFile().getParentFile(), suffixedName));
+	} //end of addSuffix
+	
+	
+	/**
+	 * getBytesWritten
+	 * @return  the bytes written to the outputs of every route
+	 */
+	private long getBytesWritten() {
+		long bytes = 0;
+		for (TypeRoute route : routes.values()) {
+			for (EdgeSink sink : route.sinks) {
+				if (sink != null)
+					bytes += sink.getBytesWritten();
+			}
+		}
+		return(bytes);
+	} //end of getBytesWritten
+	
+	
+	/**
+	 * formatsInWorker
+	 * @return  true if the edges of a file go to a single text output, so the workers
+	 *          can format them ahead of time
+	 */
+	private boolean formatsInWorker() {
+		return(FORMAT_TEXT.equals(outputFormat) && (shards == 1 || !shardByContributor));
+	} //end of formatsInWorker
+	
+	
+	/**
+	 * getManifestSettings
+	 * @return  String with the settings an output depends on, recorded in its manifest
+	 */
+	private String getManifestSettings() {
+		File exclusionsFile = exclusions? new File(excludedIDFileName) : null;
+		return("limit=" + maxContribute + "\ttopk=" + selectTopK + 
+				"\texclusions=" + ((exclusionsFile == null)? "" : exclusionsFile.getAbsolutePath() + 
+						"," + exclusionsFile.length() + "," + exclusionsFile.lastModified()) + 
+				"\tlabels=" + ((descriptorLabels == null)? -1 : descriptorLabels.size()) + 
+				"," + ((qualifierLabels == null)? -1 : qualifierLabels.size()) + 
+				"\tlineSeparator=" + LINE_SEPARATOR.length());
+	} //end of getManifestSettings
+	
+	
+	/**
+	 * reportMetrics
+	 * Logs the summary of the run as JSON, and writes it to the metrics file if one was set.
+	 */
+	private void reportMetrics() {
+		String json = metrics.toJson();
+		log.info("Run summary: " + json);
+		if (metricsFileName == null)
+			return;
+		PrintWriter metricsWriter = null;
+		try {
+			metricsWriter = new PrintWriter(metricsFileName);
+			metricsWriter.println(json);
+		} catch (IOException e) {
+			log.warn("The run summary could not be written to " + metricsFileName + ": " + e.getMessage());
+		} finally {
+			try {metricsWriter.close();}catch(Exception e){}
+		}
+	} //end of reportMetrics
+	
+	
+	/**
+	 * createExecutor
+	 * Creates the executor used to process the data files in parallel.
+	 */
+	private ExecutorService createExecutor() {
+		if (EXECUTOR_VIRTUAL.equals(executorType)) {
+			try {
+				// Looked up reflectively so the code still runs on Java versions
+				// without virtual threads.
+				Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+				return((ExecutorService)factory.invoke(null));
+			} catch (Exception e) {
+				log.warn("Virtual threads are not available in this Java runtime, " + 
+						"so a fork-join pool is used instead.");
+			}
+		}
+		return(new ForkJoinPool(threads));
+	} //end of createExecutor
+	
+	
+	/**
+	 * waitForEdges
+	 * Waits for a worker to finish a file.  A failure is rethrown as the first cause
+	 * that is not a RuntimeException, such as the IOException of a file that could 
+	 * not be read, rather than as the exceptions the executor wraps it in.
+	 */
+	private EdgeBlock waitForEdges(Future<EdgeBlock> future) throws Exception {
+		try {
+			return(future.get());
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			while (cause instanceof RuntimeException && cause.getCause() != null)
+				cause = cause.getCause();
+			if (cause instanceof Exception)
+				throw (Exception)cause;
+			throw e;
+		}
+	} //end of waitForEdges
+	
+	
+	private void writePending(PendingFile file) throws Exception {
+		writeEdges(file.route, waitForEdges(file.edges), file.entry);
+	} //end of writePending
+	
+	
+	/**
+	 * writeEdges
+	 * Writes the edges of one file to the outputs of its route and, with a manifest,
+	 * records where they are in the output once they have been flushed.  Otherwise 
+	 * the edges are left in the output's buffer.
+	 */
+	private void writeEdges(TypeRoute route, EdgeBlock edges, FileManifest.Entry entry) throws Exception {
+		EdgeSink[] sinks = route.sinks;
+		long start = System.nanoTime();
+		long offset = sinks[0].getBytesWritten();
+		long count = 0;
+		for (int i = 0; i < sinks.length; i++)
+			count += edges.write(sinks[i], i);
+		metrics.addEdgesWritten(count);
+		if (entry != null)
+			sinks[0].flush(); // there is only one output with a manifest
+		metrics.addWriteTime(System.nanoTime() - start);
+		metrics.setBytesWritten(getBytesWritten());
+		if (entry != null)
+			manifest.commit(entry, offset, sinks[0].getBytesWritten() - offset, count);
+		filesWritten++;
+		if (filesWritten % PROGRESS_INTERVAL == 0)
+			log.info("Progress: " + filesWritten + " of " + metrics.getFilesDiscovered() + 
+					" files found so far have been written.");
+	} //end of writeEdges
+	
+	
+	/**
+	 * FileTask
+	 * Processes a single data file on one of the worker threads.
+	 */
+	private class FileTask implements Callable<EdgeBlock> {
+		private File currentFile = null;
+		private FileManifest.Entry entry = null;
+		private TypeRoute route = null;
+		
+		FileTask(File currentFile, FileManifest.Entry entry, TypeRoute route) {
+			this.currentFile = currentFile;
+			this.entry = entry;
+			this.route = route;
+		}
+		
+		public EdgeBlock call() throws Exception {
+			return(processFile(currentFile, entry, route));
+		}
+	} //end of class FileTask
+	
+	
+	/**
+	 * PendingFile
+	 * A file being processed by a worker, with where its edges are to be written.
+	 */
+	private static class PendingFile {
+		private TypeRoute route = null;
+		private FileManifest.Entry entry = null; // null without a manifest
+		private Future<EdgeBlock> edges = null;
+		
+		PendingFile(TypeRoute route, FileManifest.Entry entry, Future<EdgeBlock> edges) {
+			this.route = route;
+			this.entry = entry;
+			this.edges = edges;
+		}
+	} //end of class PendingFile
+	
+	
+	/**
+	 * TypeRoute
+	 * The limits and exclusions used for the files of one contributor type, and the
+	 * outputs their edges are written to.  Without routing by type, every file has
+	 * the same route.
+	 */
+	private static class TypeRoute {
+		private String type = null;
+		private int[] limits = null;            // in ascending order, the last being maxContribute
+		private int maxContribute = 0;
+		private ExcludedIds excludedIds = null; // null if no IDs are excluded
+		private EdgeSink[] sinks = null;        // the output for each limit
+		
+		TypeRoute(String type, int[] limits, ExcludedIds excludedIds) {
+			this.type = type;
+			this.limits = limits;
+			this.maxContribute = limits[limits.length - 1];
+			this.excludedIds = excludedIds;
+			this.sinks = new EdgeSink[limits.length];
+		}
+	} //end of class TypeRoute
+	
+	
+	/**
+	 * EdgeBlock
+	 * The edges produced for one data file, ready to be written to the output.
+	 */
+	private interface EdgeBlock {
+		/**
+		 * @param sink   EdgeSink for the output of one limit
+		 * @param limit  integer with the position of that limit in the limits of the run
+		 * @return       the number of edges written
+		 */
+		long write(EdgeSink sink, int limit) throws Exception;
+	} //end of interface EdgeBlock
+	
+	
+	/**
+	 * FormattedEdges
+	 * Edges that were already formatted in memory by a worker, for text output 
+	 * where all of the edges of a term go to the same file.
+	 */
+	private static class FormattedEdges implements EdgeBlock {
+		private String meshTerm = null;
+		private String termLabels = null;
+		private String[] edges = null; // the edges for each limit
+		private int[] counts = null;
+		
+		FormattedEdges(FileTally tally, String[] edges, int[] counts) {
+			this.meshTerm = tally.meshTerm;
+			this.termLabels = tally.termLabels;
+			this.edges = edges;
+			this.counts = counts;
+		}
+		
+		public long write(EdgeSink sink, int limit) throws Exception {
+			sink.startTerm(meshTerm, termLabels);
+			if (sink instanceof ShardedEdgeSink)
+				sink = ((ShardedEdgeSink)sink).getTermShard();
+			((TextEdgeSink)sink).print(edges[limit]);
+			return(counts[limit]);
+		}
+	} //end of class FormattedEdges
+	
+	
+	/**
+	 * ContributorEdges
+	 * The contributors of a file with their adjusted weights, for outputs that are
+	 * not formatted ahead of time.
+	 */
+	private static class ContributorEdges implements EdgeBlock {
+		private String meshTerm = null;
+		private String termLabels = null;
+		private ArrayList<ContributorList> contributors = null; // the contributors for each limit
+		
+		ContributorEdges(FileTally tally, ArrayList<ContributorList> contributors) {
+			this.meshTerm = tally.meshTerm;
+			this.termLabels = tally.termLabels;
+			this.contributors = contributors;
+		}
+		
+		public long write(EdgeSink sink, int limit) throws Exception {
+			sink.startTerm(meshTerm, termLabels);
+			ContributorList limited = contributors.get(limit);
+			for (int i = 0; i < limited.size(); i++)
+				sink.addEdge(limited.getContributorId(i), limited.getWeight(i));
+			return(limited.size());
+		}
+	} //end of class ContributorEdges
+	
+	
+	/**
+	 * CopiedEdges
+	 * The edges of an unchanged file, copied from the previous output.
+	 */
+	private class CopiedEdges implements EdgeBlock {
+		private FileManifest.Entry entry = null;
+		
+		CopiedEdges(FileManifest.Entry entry) {
+			this.entry = entry;
+		}
+		
+		public long write(EdgeSink sink, int limit) throws Exception {
+			return(manifest.copy(entry, ((TextEdgeSink)sink).getOutputStream()));
+		}
+	} //end of class CopiedEdges
+	
+	
+	/**
+	 * StreamedEdges
+	 * The edges of a file processed without a limit on the number of contributors.
+	 * The weight total and the rounding remainder are found ahead of time (possibly
+	 * on a worker thread) and the edges are written with a final pass over the file 
+	 * when it is this file's turn to be written, so the rows are never held in memory.
+	 */
+	private class StreamedEdges implements EdgeBlock {
+		private File currentFile = null;
+		private String meshTerm = null;
+		private String termLabels = null;
+		private TypeRoute route = null;
+		private double total = 0.0;
+		private double remainder = 0.0;
+		
+		StreamedEdges(File currentFile, FileTally tally, double total, double remainder) {
+			this.currentFile = currentFile;
+			this.meshTerm = tally.meshTerm;
+			this.termLabels = tally.termLabels;
+			this.route = tally.route;
+			this.total = total;
+			this.remainder = remainder;
+		}
+		
+		public long write(EdgeSink sink, int limit) throws Exception {
+			return(writeStreamedFile(sink, this));
+		}
+	} //end of class StreamedEdges
+	
+	
+	/**
+	 * processFile
+	 * Processes a single data file.  Without a limit on the number of contributors
+	 * (and without top-K selection) the file is streamed rather than loaded.  A file
+	 * the manifest shows to be unchanged is copied from the previous output instead,
+	 * and any other file is hashed for the manifest before it is read.
+	 */
+	private EdgeBlock processFile(File currentFile, FileManifest.Entry entry, TypeRoute route) throws Exception {
+		if (entry != null) {
+			if (entry.getState() == FileManifest.Entry.COPY)
+				return(new CopiedEdges(entry));
+			if (!entry.isHashed())
+				entry.setHash(FileManifest.hash(currentFile));
+		}
+		if (route.maxContribute == Integer.MAX_VALUE && !selectTopK && route.limits.length == 1)
+			return(measureStreamedFile(currentFile, route));
+		return(processLimitedFile(currentFile, route));
+	} //end of processFile
+	
+	
+	/**
+	 * measureStreamedFile
+	 * Makes the first two passes over a file used without a limit on the number of
+	 * contributors: the first finds the total weight of the contributors included, 
+	 * and the second finds the difference between 1 and the total of the adjusted 
+	 * weights (the adjustment given to the first edge by adjustWeights).  Only the 
+	 * totals are kept, so the memory used does not depend on the size of the file.
+	 */
+	private StreamedEdges measureStreamedFile(File currentFile, TypeRoute route) throws Exception {
+		DelimitedRowReader reader = null;
+		long start = System.nanoTime();
+		FileTally tally = createTally(currentFile, route);
+		// compensated the same way as ContributorList.adjustWeights
+		WeightNormalizer.Sum weightTotal = new WeightNormalizer.Sum();
+		WeightNormalizer.Sum adjTotal = new WeightNormalizer.Sum();
+		double total = 0.0;
+		try {
+			reader = openDataFile(currentFile);
+			while (reader.nextRow()) {
+				if (reader.isEmptyRow())
+					continue;
+				checkRow(reader, tally);
+				if (!isExcluded(reader, tally))
+					weightTotal.add(reader.parseDouble(1));
+			} //loop through the file for the total
+			reader.close();
+			total = weightTotal.getTotal();
+			tally.rows = reader.getRowNumber();
+			tally.bytes = reader.getBytesRead();
+			long parsed = System.nanoTime();
+			metrics.addParseTime(parsed - start);
+			reader = openDataFile(currentFile);
+			while (reader.nextRow()) {
+				if (!reader.isEmptyRow() && !isExcluded(reader, route))
+					adjTotal.add(adjustedWeight(reader.parseDouble(1), total));
+			} //loop through the file for the adjusted total
+			tally.bytes += reader.getBytesRead();
+			metrics.addNormalizeTime(System.nanoTime() - parsed);
+		} finally {
+			try {reader.close();}catch(Exception e){}
+		}
+		finishFile(tally, start);
+		return(new StreamedEdges(currentFile, tally, total, 1-adjTotal.getTotal()));
+	} //end of measureStreamedFile
+	
+	
+	/**
+	 * writeStreamedFile
+	 * The final pass over a file used without a limit on the number of contributors.
+	 * Each edge is written as it is read, with the weights adjusted the same way as
+	 * adjustWeights does for the contributors held in memory.
+	 */
+	private int writeStreamedFile(EdgeSink sink, StreamedEdges edges) throws Exception {
+		DelimitedRowReader reader = null;
+		boolean first = true; // the remainder is applied to the first edge
+		int count = 0;
+		try {
+			sink.startTerm(edges.meshTerm, edges.termLabels);
+			reader = openDataFile(edges.currentFile);
+			while (reader.nextRow()) {
+				if (reader.isEmptyRow() || isExcluded(reader, edges.route))
+					continue;
+				double weight = adjustedWeight(reader.parseDouble(1), edges.total);
+				if (first) {
+					weight += edges.remainder;
+					first = false;
+				}
+				sink.addEdge(reader.getString(0), weight);
+				count++;
+			} //loop through the file
+			metrics.addBytesRead(reader.getBytesRead());
+			return(count);
+		} finally {
+			try {reader.close();}catch(Exception e){}
+		}
+	} //end of writeStreamedFile
+	
+	
+	private DelimitedRowReader openDataFile(File currentFile) throws IOException {
+		return(DelimitedRowReader.open(currentFile, ',', 
+				mappedInput? DelimitedRowReader.DEFAULT_MAP_THRESHOLD : Long.MAX_VALUE));
+	} //end of openDataFile
+	
+	
+	/**
+	 * adjustedWeight
+	 * @return  the weight divided by the total, as in ContributorList.adjustWeights
+	 */
+	private static double adjustedWeight(double weight, double total) {
+		return((total != 0)? weight / total : weight);
+	} //end of adjustedWeight
+	
+	
 	/**
 	 * processLimitedFile
 	 * This method processes the pagerank output file for a single qualified descriptor.
@@ -245,34 +1114,71 @@ public class ContributedBy {
 	 * Where the type is what is contributing to the keyword (e.g., venue, author, etc.)
 	 * and both the descriptorId and qualifierId are numeric IDs.  If there is no qualified
 	 * used in this particular case, then the qualifierID should be 0.
+	 * For text output, the edges are returned as formatted lines so that the file can
+	 * be processed on a worker thread; only the caller writes to the output file.
+	 * With several limits, the file is read up to the largest, and the weights of
+	 * the contributors up to each limit are adjusted separately.  The limits are 
+	 * those of the route of the file's type.
 	 */
-	private void processLimitedFile(PrintWriter writer, File currentFile) throws Exception {
-		BufferedReader reader = null;
+	private EdgeBlock processLimitedFile(File currentFile, TypeRoute route) throws Exception {
+		DelimitedRowReader reader = null;
 		int count = 0; //number of lines processed
-		ArrayList<Contributor> contributors = null;
+		ContributorList contributors = null;
+		long start = System.nanoTime();
 		try {
-			String meshTerm = getMeshTerm(currentFile);
-			//Setup an array list of contributors to track the contributors used.
-			contributors = new ArrayList<Contributor>(maxContribute);
+			FileTally tally = createTally(currentFile, route);
 			// open the file and loop through processing records
-			reader = new BufferedReader(new FileReader(currentFile));
-			String contributor = reader.readLine();
-			while (count < maxContribute && contributor != null) {
-				count += processContributor(contributor, contributors, meshTerm);
-				contributor = reader.readLine();
-			} //loop through the file
+			reader = openDataFile(currentFile);
+			if (selectTopK)
+				contributors = selectTopContributors(reader, tally);
+			else {
+				//Setup an array list of contributors to track the contributors used.
+				contributors = new ContributorList(Math.min(route.maxContribute, INITIAL_CONTRIBUTORS));
+				while (count < route.maxContribute && reader.nextRow()) {
+					if (!reader.isEmptyRow())
+						count += processContributor(reader, contributors, tally);
+				} //loop through the file
+			}
 			try {reader.close();}catch(Exception e){}
-			// *** Adjust the weights ***
-			adjustWeights(contributors);
-			// Write out the edges with their new weights
-			while(!contributors.isEmpty()) {
-				Contributor contributorHolder = contributors.remove(0);
-				writer.println(meshTerm + "," + 
-				               contributorHolder.getContributorId() + "," + 
-				               contributorHolder.getWeight() );
+			tally.rows = reader.getRowNumber();
+			tally.bytes = reader.getBytesRead();
+			long parsed = System.nanoTime();
+			metrics.addParseTime(parsed - start);
+			// *** Adjust the weights *** of the contributors up to each limit.  The smaller
+			// limits get copies, made before the weights of the largest are adjusted.
+			ArrayList<ContributorList> limited = new ArrayList<ContributorList>(route.limits.length);
+			for (int i = 0; i < route.limits.length - 1; i++)
+				limited.add(contributors.copyPrefix(route.limits[i]));
+			limited.add(contributors);
+			for (ContributorList prefix : limited)
+				prefix.adjustWeights();
+			long normalized = System.nanoTime();
+			metrics.addNormalizeTime(normalized - parsed);
+			if (!formatsInWorker()) {
+				ContributorEdges contributorEdges = new ContributorEdges(tally, limited);
+				contributors = null; // now held by the edges
+				finishFile(tally, start);
+				return(contributorEdges);
 			}
-			writer.flush();
-			return;
+			// Format the edges with their new weights
+			String[] edges = new String[route.limits.length];
+			int[] counts = new int[route.limits.length];
+			for (int i = 0; i < route.limits.length; i++) {
+				ContributorList limitContributors = limited.get(i);
+				StringBuilder limitEdges = new StringBuilder(limitContributors.size() * 48);
+				for (int c = 0; c < limitContributors.size(); c++) {
+					limitEdges.append(tally.meshTerm).append(',')
+					          .append(limitContributors.getContributorId(c)).append(',')
+					          .append(limitContributors.getWeight(c))
+					          .append(tally.termLabels)
+					          .append(LINE_SEPARATOR);
+				}
+				edges[i] = limitEdges.toString();
+				counts[i] = limited.get(i).size();
+			}
+			metrics.addWriteTime(System.nanoTime() - normalized);
+			finishFile(tally, start);
+			return(new FormattedEdges(tally, edges, counts));
 		} finally{
 			try {reader.close();}catch(Exception e){}
 			try {contributors.clear();}catch(Exception e){}
@@ -294,39 +1200,149 @@ public class ContributedBy {
 	} //end of getMeshTerm
 	
 	
-	private int processContributor(String contributor, ArrayList<Contributor> contributors, String meshTerm) {
+	/**
+	 * getType
+	 * @return  the contributor type of a data file, which is the name up to the first underscore
+	 */
+	private String getType(File file) throws IOException {
+		String fileName = file.getName();
+		int splitPos = fileName.indexOf("_");
+		if (splitPos <= 0) { //there is no type before an underscore
+			String msg = "The file named " + fileName + 
+					" could not be routed because the name of the file does not start with a type.";
+			log.error(msg);
+			throw new IOException(msg);
+		}
+		return(fileName.substring(0, splitPos));
+	} //end of getType
+	
+	
+	/**
+	 * createTally
+	 * Starts the counts for a data file, with the labels for its MeSH term.
+	 */
+	private FileTally createTally(File currentFile, TypeRoute route) throws IOException {
+		FileTally tally = new FileTally(getMeshTerm(currentFile), route);
+		if (descriptorLabels != null || qualifierLabels != null) {
+			// the MeSH term is DescriptorId_QualifierId
+			int splitPos = tally.meshTerm.indexOf("_");
+			String descriptorId = (splitPos < 0)? tally.meshTerm : tally.meshTerm.substring(0, splitPos);
+			String qualifierId = (splitPos < 0)? "" : tally.meshTerm.substring(splitPos + 1);
+			tally.termLabels = "," + LabelJoin.quote((descriptorLabels != null)? descriptorLabels.getLabel(descriptorId) : null) +
+					"," + LabelJoin.quote((qualifierLabels != null)? qualifierLabels.getLabel(qualifierId) : null);
+		}
+		return(tally);
+	} //end of createTally
+	
+	
+	/**
+	 * processContributor
+	 * Adds the contributor in the current row of the reader to the list of contributors
+	 * unless it is excluded.  The ID is checked against the exclusions while it is still
+	 * in the reader's buffer, and only becomes a String if the contributor is kept.
+	 */
+	private int processContributor(DelimitedRowReader row, ContributorList contributors, FileTally tally) 
+			throws IOException {
 		int added = 0; // this contributor has not been added yet
-		String[] contributorFields = contributor.split(",");
+		checkRow(row, tally);
 		// If either we are not making any exclusions, or the
 		// ID is not in the set of excluded IDs, then add it
 		// to the list of contributors.
-		if (!exclusions || !excludedIds.contains(contributorFields[0])) {
-			contributors.add(new Contributor(contributorFields[0], 
-					Double.parseDouble(contributorFields[1]) ) );
+		if (!isExcluded(row, tally)) {
+			contributors.add(row.getString(0), row.parseDouble(1));
 			added = 1;
-		} else {
-			log.info("For the MeSH qualified descriptor " + 
-					meshTerm + " the contributor " + 
-					contributorFields[0] + " was excluded.");
 		}
 		return (added);
 	} //end of processContributor
 	
-	private void adjustWeights(ArrayList<Contributor> contributors) {
+	
+	/**
+	 * selectTopContributors
+	 * Reads the whole file and keeps the maxContribute contributors with the largest 
+	 * weights, so the file does not need to be sorted by weight.  The contributors
+	 * are returned in descending order of weight, and the limit is that of the file's route.
+	 */
+	private ContributorList selectTopContributors(DelimitedRowReader row, FileTally tally) 
+			throws IOException {
+		TopKSelector selector = new TopKSelector(tally.route.maxContribute);
+		while (row.nextRow()) {
+			if (row.isEmptyRow())
+				continue;
+			checkRow(row, tally);
+			double weight = row.parseDouble(1);
+			// the exclusions are only checked for rows that would be selected
+			if (selector.accepts(weight) && !isExcluded(row, tally))
+				selector.add(weight, (int)row.getRowNumber(), row.getString(0));
+		} //loop through the file
+		selector.sortDescending();
+		ContributorList contributors = new ContributorList(selector.size());
+		for (int i = 0; i < selector.size(); i++)
+			contributors.add(selector.getId(i), selector.getWeight(i));
+		return(contributors);
+	} //end of selectTopContributors
+	
+	
+	private void checkRow(DelimitedRowReader row, FileTally tally) throws IOException {
+		if (row.getFieldCount() < 2)
+			throw new IOException("Row " + row.getRowNumber() + " for the MeSH qualified descriptor " + 
+					tally.meshTerm + " does not have both an ID and a weight.");
+	} //end of checkRow
+	
+	
+	/**
+	 * isExcluded
+	 * Checks whether the contributor in the current row is excluded and counts the
+	 * exclusion for the file.  The count is logged once per MeSH term by finishFile;
+	 * each excluded contributor is only logged at the debug level.
+	 */
+	private boolean isExcluded(DelimitedRowReader row, FileTally tally) {
+		if (!isExcluded(row, tally.route))
+			return(false);
+		tally.excluded++;
+		if (log.isDebugEnabled())
+			log.debug("For the MeSH qualified descriptor " + 
+					tally.meshTerm + " the contributor " + 
+					row.getString(0) + " was excluded.");
+		return(true);
+	} //end of isExcluded
+	
+	
+	private static boolean isExcluded(DelimitedRowReader row, TypeRoute route) {
+		return(route.excludedIds != null && 
+				route.excludedIds.contains(row.getBuffer(), row.getFieldStart(0), row.getFieldEnd(0)));
+	} //end of isExcluded
+	
+	
+	/**
+	 * finishFile
+	 * Records the counts for a file that has been read and logs the number of 
+	 * contributors excluded for its MeSH term.
+	 */
+	private void finishFile(FileTally tally, long start) {
+		if (tally.excluded > 0)
+			log.info("For the MeSH qualified descriptor " + tally.meshTerm + ", " + 
+					tally.excluded + " contributors were excluded.");
+		metrics.fileProcessed(tally.rows, tally.excluded, tally.bytes, System.nanoTime() - start);
+	} //end of finishFile
+	
+	
+	/**
+	 * FileTally
+	 * The counts kept while a single data file is read.
+	 */
+	private static class FileTally {
+		private String meshTerm = null;
+		private TypeRoute route = null;  // the limits and exclusions for the file
+		private String termLabels = ""; // the label columns added to each edge
+		private long rows = 0;
+		private long excluded = 0;
+		private long bytes = 0;
 		
-		// Get the total weight of the contributors included
-		// The total becomes the denominator for adjusting the weights.
-		double total = 0.0;
-		for (Contributor contributor: contributors)
-			total += contributor.getWeight();
-		// Adjust the weights
-		double adjTotal = 0.0; // the total for the adjusted amounts
-		for (Contributor contributor: contributors)
-			adjTotal += contributor.updateWeight(total); 
-		// apply any difference to the first (greatest) weight edge
-		contributors.get(0).adjustWeight(1-adjTotal);
-		return;
-	} //end of adjustWeights
+		FileTally(String meshTerm, TypeRoute route) {
+			this.meshTerm = meshTerm;
+			this.route = route;
+		}
+	} //end of class FileTally
 	
 	/**
 	 * 
@@ -341,9 +1357,37 @@ public class ContributedBy {
 	 * 2) Output file name as a String containing the full path and name of the output file to be written.
 	 * 3) An integer value with the maximum number of IDs to contribute to a qualified MeSH descriptor in the graph.
 	 *    If there should be no maximum on the number of "Contributed By" edges for a qualified descriptor, then 
-	 *    this limit should be set to 0.
+	 *    this limit should be set to 0.  A comma-separated list of limits, such as 10,25,50,100, writes an 
+	 *    output for each limit in one pass, named with -topn added to the output file name (see setLimits).
 	 * 4) Optional full path to a file containing IDs to be skipped when creating the contributed by files.
 	 *    Each ID to be skipped should be listed on its own line in the file.
+	 * The positional parameters can be followed by these optional settings, each given as a name and value:<br/>
+	 * -threads n             Number of worker threads used to process the data files (default 1).<br/>
+	 * -executor type         Either forkjoin (the default) or virtual for virtual threads on Java 21 or later.<br/>
+	 * -topk true|false       If true, the files do not need to be sorted; the rows with the largest weights 
+	 *                        are selected instead of the first rows in each file (default false).<br/>
+	 * -mapped true|false     If true, the larger data files are read through memory mapping (default false).<br/>
+	 * -metrics file          Full path of a file for the JSON summary of the run's counters and timers.<br/>
+	 * -descriptorLabels file Tab separated table of descriptor IDs and labels; the label of each edge's 
+	 *                        descriptor is added as a column.<br/>
+	 * -qualifierLabels file  Tab separated table of qualifier IDs and labels, added the same way.  Both 
+	 *                        tables are read through a saved index if pubmed.labelIndex is true.<br/>
+	 * -manifest file         Manifest of the data files and their edges, so a later run only reads the
+	 *                        files that are new or have changed, and a stopped run can be resumed.<br/>
+	 * -format text|binary    Binary writes fixed-width edge records with the terms and contributor IDs 
+	 *                        in node tables next to the output file (default text).<br/>
+	 * -shards n              Number of files the edges are split between by a hash of the shard key,
+	 *                        with shard i of name.ext written to name-00i.ext (default 1).<br/>
+	 * -shardBy key           Shard key, either term (the default) or contributor.<br/>
+	 * -include globs         Comma separated glob patterns for the names of the data files to use, such 
+	 *                        as author_* for one contributor type (default all files).<br/>
+	 * -exclude globs         Comma separated glob patterns for the names of the data files to skip.<br/>
+	 * -byType true|false     If true, the edges of each contributor type (the file name up to the first
+	 *                        underscore) are written to name-type.ext (default false).<br/>
+	 * -typeLimits list       Limits for some types, such as venue=50,author=10/25, in place of the
+	 *                        limits of the run; implies -byType true.<br/>
+	 * -typeExclusions list   Excluded ID files for some types, such as venue=/data/venues.txt, in place
+	 *                        of the exclusion file of the run; implies -byType true.<br/>
 	 *                       
 	 * @throws Exception
 	 */
@@ -352,28 +1396,102 @@ public class ContributedBy {
 		String dataPath = null;
 		String outFileName = null;
 		int maxContribute = 0; //0 indicates no limit
+		int[] limits = null;
 		String excludedIDFileName = null;
+		ArrayList<String> parameters = new ArrayList<String>();
+		HashMap<String, String> options = new HashMap<String, String>();
 		
-		if (args.length < 3) {
+		// separate the optional "-name value" settings from the positional parameters
+		for (int i = 0; i < args.length; i++) {
+			if (args[i].startsWith("-") && i + 1 < args.length && OPTIONS.contains(args[i]))
+				options.put(args[i], args[++i]);
+			else
+				parameters.add(args[i]);
+		}
+		if (parameters.size() < 3 || parameters.size() > 4) {
 			usage();
 			return;
 		}
-		dataPath = args[0]; // path to a directory containing data files - 
-		outFileName = args[1];
+		dataPath = parameters.get(0); // path to a directory containing data files - 
+		outFileName = parameters.get(1);
 		try {
-			maxContribute = Integer.parseInt(args[2]);
-			if (maxContribute < 0) {
-				usage();
-				return;
+			String[] limitList = parameters.get(2).split(",");
+			limits = new int[limitList.length];
+			for (int i = 0; i < limitList.length; i++) {
+				limits[i] = Integer.parseInt(limitList[i].trim());
+				if (limits[i] < 0) {
+					usage();
+					return;
+				}
+				// a limit of 0 is no limit, so it is the largest
+				if (maxContribute >= 0)
+					maxContribute = (limits[i] == 0)? -1 : Math.max(maxContribute, limits[i]);
 			}
+			maxContribute = Math.max(maxContribute, 0);
 		} catch (NumberFormatException e) {
 			usage();
 			return;
 		}
-		if (args.length > 3)
-			excludedIDFileName = args[3];
+		if (parameters.size() > 3)
+			excludedIDFileName = parameters.get(3);
 		
 		contributedBy = new ContributedBy(dataPath, maxContribute, excludedIDFileName);
+		try {
+			if (limits.length > 1)
+				contributedBy.setLimits(limits);
+			if (options.containsKey("-threads"))
+				contributedBy.setThreads(Integer.parseInt(options.get("-threads")));
+			if (options.containsKey("-executor"))
+				contributedBy.setExecutorType(options.get("-executor"));
+			if (options.containsKey("-topk"))
+				contributedBy.setSelectTopK(Boolean.parseBoolean(options.get("-topk")));
+			if (options.containsKey("-mapped"))
+				contributedBy.setMappedInput(Boolean.parseBoolean(options.get("-mapped")));
+			contributedBy.setMetricsFileName(options.get("-metrics"));
+			contributedBy.setManifestFileName(options.get("-manifest"));
+			if (options.containsKey("-format"))
+				contributedBy.setOutputFormat(options.get("-format"));
+			if (options.containsKey("-shards") || options.containsKey("-shardBy"))
+				contributedBy.setShards(options.containsKey("-shards")? Integer.parseInt(options.get("-shards")) : 1, 
+						options.containsKey("-shardBy")? options.get("-shardBy") : SHARD_BY_TERM);
+			if (options.containsKey("-byType"))
+				contributedBy.setTypeRouting(Boolean.parseBoolean(options.get("-byType")));
+			if (options.containsKey("-typeLimits")) {
+				for (String typeSetting : options.get("-typeLimits").split(",")) {
+					String[] setting = typeSetting.split("=", 2);
+					if (setting.length < 2)
+						throw new IllegalArgumentException("The type limit " + typeSetting + " is not type=limit.");
+					String[] typeLimitList = setting[1].split("/");
+					int[] typeLimits = new int[typeLimitList.length];
+					for (int i = 0; i < typeLimitList.length; i++)
+						typeLimits[i] = Integer.parseInt(typeLimitList[i].trim());
+					contributedBy.setTypeLimits(setting[0].trim(), typeLimits);
+				}
+			}
+			if (options.containsKey("-typeExclusions")) {
+				for (String typeSetting : options.get("-typeExclusions").split(",")) {
+					String[] setting = typeSetting.split("=", 2);
+					if (setting.length < 2)
+						throw new IllegalArgumentException("The type exclusion " + typeSetting + " is not type=file.");
+					contributedBy.setTypeExclusions(setting[0].trim(), setting[1].trim());
+				}
+			}
+			if (options.containsKey("-include") || options.containsKey("-exclude"))
+				contributedBy.setFileGlobs(
+						options.containsKey("-include")? options.get("-include").split(",") : null,
+						options.containsKey("-exclude")? options.get("-exclude").split(",") : null);
+			if (options.containsKey("-descriptorLabels") || options.containsKey("-qualifierLabels"))
+				contributedBy.setLabels(
+						options.containsKey("-descriptorLabels")? 
+								LabelJoin.readLabels(new File(options.get("-descriptorLabels"))) : null,
+						options.containsKey("-qualifierLabels")? 
+								LabelJoin.readLabels(new File(options.get("-qualifierLabels"))) : null);
+		} catch (IllegalArgumentException e) {
+			// also covers a NumberFormatException for the thread count
+			System.out.println(e.getMessage());
+			usage();
+			return;
+		}
 		if (contributedBy.initialized)
 			contributedBy.process(outFileName);
 		else
@@ -413,7 +1531,13 @@ public class ContributedBy {
 	} //end of main
 	
 	private static void usage() {
-		System.out.println("ContributedBy data directory path, output file name, max number of contributors, [optional excluded IDs file]");
+		System.out.println("ContributedBy data directory path, output file name, max number of contributors (or a list such as 10,25,50)," + 
+				" [optional excluded IDs file]" + 
+				" [-threads n] [-executor forkjoin|virtual] [-topk true|false]" + 
+				" [-mapped true|false] [-metrics file] [-descriptorLabels file] [-qualifierLabels file]" + 
+				" [-manifest file] [-format text|binary] [-shards n] [-shardBy term|contributor]" + 
+				" [-include globs] [-exclude globs]" + 
+				" [-byType true|false] [-typeLimits type=limit,...] [-typeExclusions type=file,...]");
 	} //end of usage
 	
 } //end of class ContributedBy
@@ -0,0 +1,78 @@
+package edu.indiana.slis.pubmedgraphtools;
+
+import java.util.Arrays;
+
+
+/**
+ * ContributorList
+ * The contributors kept for a MeSH term, with their IDs and weights held in
+ * parallel arrays, so the weights are normalized by WeightNormalizer without an
+ * object per contributor.
+ */
+class ContributorList {
+	private String[] contributorIds = null;
+	private double[] weights = null;
+	private int size = 0;
+
+	public ContributorList(int capacity) {
+		contributorIds = new String[Math.max(capacity, 1)];
+		weights = new double[contributorIds.length];
+	} //end of constructor
+
+	public void add(String contributorId, double weight) {
+		if (size == weights.length) {
+			int capacity = (int)Math.min((long)size * 2, Integer.MAX_VALUE - 8);
+			contributorIds = Arrays.copyOf(contributorIds, capacity);
+			weights = Arrays.copyOf(weights, capacity);
+		}
+		contributorIds[size] = contributorId;
+		weights[size++] = weight;
+	} //end of add
+
+	/**
+	 * copyPrefix
+	 * @return  a new list with the first contributors, up to the limit
+	 */
+	public ContributorList copyPrefix(int limit) {
+		int count = Math.min(limit, size);
+		ContributorList prefix = new ContributorList(count);
+		System.arraycopy(contributorIds, 0, prefix.contributorIds, 0, count);
+		System.arraycopy(weights, 0, prefix.weights, 0, count);
+		prefix.size = count;
+		return(prefix);
+	} //end of copyPrefix
+
+	/**
+	 * adjustWeights
+	 * The weights read from the file are based on all of the contributors in the
+	 * file totalling to 1.  Since we are using a subset of those contributors, each
+	 * weight is divided by the total of the subset, and as the adjusted weights may
+	 * total to something slightly different from one, the difference is applied to
+	 * the first (greatest) weight.  See WeightNormalizer.
+	 */
+	public void adjustWeights() {
+		WeightNormalizer.normalize(weights, 0, size);
+	} //end of adjustWeights
+
+	public String getContributorId(int contributor) {
+		return contributorIds[contributor];
+	}
+
+	public double getWeight(int contributor) {
+		return weights[contributor];
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public boolean isEmpty() {
+		return(size == 0);
+	}
+
+	public void clear() {
+		Arrays.fill(contributorIds, 0, size, null);
+		size = 0;
+	} //end of clear
+
+} //end of class ContributorList
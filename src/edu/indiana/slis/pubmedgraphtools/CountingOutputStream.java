@@ -0,0 +1,42 @@
+package edu.indiana.slis.pubmedgraphtools;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+
+/**
+ * CountingOutputStream
+ * Counts the bytes written to the underlying stream.  Once the writers above it
+ * have been flushed, the count is the exact position in the output file.
+ */
+public class CountingOutputStream extends FilterOutputStream {
+	private long count = 0;
+
+	public CountingOutputStream(OutputStream out) {
+		super(out);
+	} //end of constructor
+
+	public void write(int b) throws IOException {
+		out.write(b);
+		count++;
+	} //end of write
+
+	public void write(byte[] b, int off, int len) throws IOException {
+		out.write(b, off, len);
+		count += len;
+	} //end of write
+
+	public long getCount() {
+		return count;
+	}
+
+	/**
+	 * setCount
+	 * Starts the count at the length of a file being appended to.
+	 */
+	public void setCount(long count) {
+		this.count = count;
+	} //end of setCount
+
+} //end of class CountingOutputStream
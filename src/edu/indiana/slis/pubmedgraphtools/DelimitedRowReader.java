@@ -0,0 +1,436 @@
+package edu.indiana.slis.pubmedgraphtools;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+
+/**
+ * DelimitedRowReader
+ * Reads rows of delimited text (comma separated PageRank files, tab separated
+ * co-author and MeSH tables) from a stream of ASCII or UTF-8 bytes into a
+ * reusable buffer.  Each call to nextRow() locates the fields of the next row
+ * as byte ranges in that buffer, so reading a row does not create any objects.
+ * A field is only turned into a String when the caller asks for it.
+ *
+ * The rows can come from an InputStream or from a memory-mapped FileChannel.
+ * A mapped file is copied into the row buffer in large blocks straight from the
+ * page cache, without a read call or character decoding for each block.
+ *
+ * The field positions and the buffer contents are only valid until the next
+ * call to nextRow().
+ */
+public class DelimitedRowReader implements Closeable {
+	private final static int DEFAULT_BUFFER_SIZE = 64 * 1024;
+	// files smaller than this are read with a stream rather than mapped
+	public final static long DEFAULT_MAP_THRESHOLD = 64 * 1024;
+	// largest part of a file that is mapped at one time
+	private final static long MAP_WINDOW = 256L * 1024 * 1024;
+	// largest mantissa that can be converted to a double exactly
+	private final static long MAX_EXACT_MANTISSA = 1L << 53;
+	// powers of ten that are exactly representable as a double
+	private final static double[] POWERS_OF_TEN = {
+		1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10,
+		1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22};
+
+	private InputStream in = null;
+	private FileChannel channel = null;    // source of the mapped input
+	private MappedByteBuffer mapped = null; // current window of the mapped input
+	private long mapPosition = 0;          // file position of the next window to map
+	private long mapEnd = 0;               // file position after the last byte to read
+	private Closeable source = null;       // closed when this reader is closed
+	private byte delimiter = ',';
+	private byte[] buffer = null;
+	private int limit = 0;    // number of bytes of data in the buffer
+	private int position = 0; // start of the next row in the buffer
+	private boolean endOfInput = false;
+	private int[] fieldStarts = new int[8];
+	private int[] fieldEnds = new int[8];
+	private int fieldCount = 0;
+	private long rowNumber = 0;
+	private long bytesRead = 0;
+
+
+	/**
+	 * @param in         InputStream with the rows to be read. The stream is closed
+	 *                   when this reader is closed.
+	 * @param delimiter  char separating the fields in a row (e.g., ',' or '\t')
+	 */
+	public DelimitedRowReader(InputStream in, char delimiter) {
+		this(in, delimiter, DEFAULT_BUFFER_SIZE);
+	} //end of constructor
+
+
+	/**
+	 * @param in          InputStream with the rows to be read.
+	 * @param delimiter   char separating the fields in a row
+	 * @param bufferSize  integer with the initial size of the buffer.  The buffer
+	 *                    grows if a single row is longer than the buffer.
+	 */
+	public DelimitedRowReader(InputStream in, char delimiter, int bufferSize) {
+		this.in = in;
+		this.source = in;
+		this.delimiter = (byte)delimiter;
+		this.buffer = new byte[Math.max(bufferSize, 16)];
+	} //end of constructor
+
+
+	/**
+	 * Reads the rows in a range of a file through memory mapping.  The channel is
+	 * not closed when this reader is closed, so several readers can share it.
+	 * @param channel    FileChannel open for reading
+	 * @param start      long with the position of the first byte to read
+	 * @param end        long with the position after the last byte to read
+	 * @param delimiter  char separating the fields in a row
+	 */
+	public DelimitedRowReader(FileChannel channel, long start, long end, char delimiter) {
+		this.channel = channel;
+		this.mapPosition = start;
+		this.mapEnd = end;
+		this.delimiter = (byte)delimiter;
+		this.buffer = new byte[(int)Math.max(Math.min(end - start + 1, DEFAULT_BUFFER_SIZE), 16)];
+	} //end of constructor
+
+
+	/**
+	 * open
+	 * Opens a file using the default threshold for memory mapping.
+	 */
+	public static DelimitedRowReader open(File file, char delimiter) throws IOException {
+		return(open(file, delimiter, DEFAULT_MAP_THRESHOLD));
+	} //end of open
+
+
+	/**
+	 * open
+	 * Opens a file for reading.  Files of at least mapThreshold bytes are memory
+	 * mapped; smaller files are read with a single stream read into a buffer sized
+	 * to the file, since mapping costs more than it saves for them.
+	 * @param file          File to be read
+	 * @param delimiter     char separating the fields in a row
+	 * @param mapThreshold  long with the smallest file size that is mapped
+	 *                      (Long.MAX_VALUE to never map)
+	 */
+	public static DelimitedRowReader open(File file, char delimiter, long mapThreshold) throws IOException {
+		long length = file.length();
+		if (length < mapThreshold)
+			return(new DelimitedRowReader(new FileInputStream(file), delimiter, 
+					(int)Math.min(length + 1, DEFAULT_BUFFER_SIZE)));
+		FileInputStream stream = new FileInputStream(file);
+		FileChannel fileChannel = stream.getChannel();
+		DelimitedRowReader reader = new DelimitedRowReader(fileChannel, 0, fileChannel.size(), delimiter);
+		reader.source = stream;
+		return(reader);
+	} //end of open
+
+
+	/**
+	 * nextRow
+	 * Advances to the next row.  A carriage return before the line feed is
+	 * dropped, and the last row does not need a line terminator.
+	 * @return  true if a row was read, false at the end of the input
+	 */
+	public boolean nextRow() throws IOException {
+		fieldCount = 0;
+		int scan = position;
+		int fieldStart = position;
+		while (true) {
+			if (scan >= limit) {
+				if (endOfInput) {
+					if (scan == position)
+						return(false);
+					// the last row does not end with a line feed
+					addField(fieldStart, scan);
+					position = scan;
+					rowNumber++;
+					return(true);
+				}
+				// move the partial row to the front of the buffer and read more
+				int shift = fill();
+				scan -= shift;
+				fieldStart -= shift;
+				continue;
+			}
+			byte b = buffer[scan];
+			if (b == '\n') {
+				int end = (scan > fieldStart && buffer[scan - 1] == '\r')? scan - 1 : scan;
+				addField(fieldStart, end);
+				position = scan + 1;
+				rowNumber++;
+				return(true);
+			}
+			if (b == delimiter) {
+				addField(fieldStart, scan);
+				fieldStart = scan + 1;
+			}
+			scan++;
+		}
+	} //end of nextRow
+
+
+	private void addField(int start, int end) {
+		if (fieldCount == fieldStarts.length) {
+			fieldStarts = Arrays.copyOf(fieldStarts, fieldCount * 2);
+			fieldEnds = Arrays.copyOf(fieldEnds, fieldCount * 2);
+		}
+		fieldStarts[fieldCount] = start;
+		fieldEnds[fieldCount] = end;
+		fieldCount++;
+	} //end of addField
+
+
+	/**
+	 * fill
+	 * Compacts the unread data to the front of the buffer (growing it if a single
+	 * row fills the whole buffer) and reads more data.
+	 * @return  the number of positions the unread data moved
+	 */
+	private int fill() throws IOException {
+		int shift = position;
+		if (shift > 0) {
+			System.arraycopy(buffer, position, buffer, 0, limit - position);
+			limit -= shift;
+			position = 0;
+			for (int i = 0; i < fieldCount; i++) {
+				fieldStarts[i] -= shift;
+				fieldEnds[i] -= shift;
+			}
+		}
+		if (limit == buffer.length)
+			buffer = Arrays.copyOf(buffer, buffer.length * 2);
+		int read = (in != null)? in.read(buffer, limit, buffer.length - limit) : 
+				readMapped(buffer, limit, buffer.length - limit);
+		if (read < 0)
+			endOfInput = true;
+		else {
+			limit += read;
+			bytesRead += read;
+		}
+		return(shift);
+	} //end of fill
+
+
+	/**
+	 * readMapped
+	 * Copies the next block of the mapped input into the buffer, mapping the next
+	 * window of the file when the current one is used up.
+	 * @return  the number of bytes copied, or -1 at the end of the range
+	 */
+	private int readMapped(byte[] destination, int offset, int length) throws IOException {
+		if (mapped == null || !mapped.hasRemaining()) {
+			if (mapPosition >= mapEnd)
+				return(-1);
+			long size = Math.min(MAP_WINDOW, mapEnd - mapPosition);
+			mapped = channel.map(FileChannel.MapMode.READ_ONLY, mapPosition, size);
+			mapPosition += size;
+		}
+		int count = Math.min(length, mapped.remaining());
+		mapped.get(destination, offset, count);
+		return(count);
+	} //end of readMapped
+
+
+	/**
+	 * @return  true if the current row has no content (a blank line)
+	 */
+	public boolean isEmptyRow() {
+		return(fieldCount == 1 && fieldStarts[0] == fieldEnds[0]);
+	}
+
+	public int getFieldCount() {
+		return fieldCount;
+	}
+
+	/**
+	 * @return  long with the 1-based number of the current row
+	 */
+	public long getRowNumber() {
+		return rowNumber;
+	}
+
+	/**
+	 * @return  long with the number of bytes read from the input so far
+	 */
+	public long getBytesRead() {
+		return bytesRead;
+	}
+
+	/**
+	 * @return  the buffer holding the current row.  It is only valid until the
+	 *          next call to nextRow().
+	 */
+	public byte[] getBuffer() {
+		return buffer;
+	}
+
+	public int getFieldStart(int field) {
+		return fieldStarts[field];
+	}
+
+	public int getFieldEnd(int field) {
+		return fieldEnds[field];
+	}
+
+	public int getFieldLength(int field) {
+		return fieldEnds[field] - fieldStarts[field];
+	}
+
+
+	/**
+	 * getString
+	 * @param field  integer with the 0-based position of the field in the row
+	 * @return       String with the field decoded as UTF-8
+	 */
+	public String getString(int field) {
+		return(new String(buffer, fieldStarts[field],
+				fieldEnds[field] - fieldStarts[field], StandardCharsets.UTF_8));
+	} //end of getString
+
+
+	/**
+	 * fieldEquals
+	 * @return  true if the field has the same bytes as the given range
+	 */
+	public boolean fieldEquals(int field, byte[] other, int start, int end) {
+		int length = fieldEnds[field] - fieldStarts[field];
+		if (length != end - start)
+			return(false);
+		int offset = fieldStarts[field];
+		for (int i = 0; i < length; i++) {
+			if (buffer[offset + i] != other[start + i])
+				return(false);
+		}
+		return(true);
+	} //end of fieldEquals
+
+
+	/**
+	 * parseInt
+	 * Parses a field containing a decimal integer without creating a String.
+	 * Anything other than an optional sign followed by up to nine digits is
+	 * handed to Integer.parseInt, so errors are reported the same way.
+	 */
+	public int parseInt(int field) {
+		int start = fieldStarts[field];
+		int end = fieldEnds[field];
+		int i = start;
+		boolean negative = false;
+		if (i < end && (buffer[i] == '-' || buffer[i] == '+')) {
+			negative = (buffer[i] == '-');
+			i++;
+		}
+		if (i == end || end - i > 9)
+			return(Integer.parseInt(getString(field)));
+		int value = 0;
+		for (; i < end; i++) {
+			int digit = buffer[i] - '0';
+			if (digit < 0 || digit > 9)
+				return(Integer.parseInt(getString(field)));
+			value = value * 10 + digit;
+		}
+		return(negative? -value : value);
+	} //end of parseInt
+
+
+	/**
+	 * parseDouble
+	 * Parses a field containing a decimal or scientific notation number (e.g.
+	 * 5.048211E-02) without creating a String.  When the significant digits fit
+	 * in 53 bits and the decimal exponent is at most 22, the value is computed
+	 * with a single correctly rounded multiply or divide, so it is identical to
+	 * the result of Double.parseDouble.  Any other value (e.g. the 17 digit
+	 * output of Double.toString) is handed to Double.parseDouble.
+	 */
+	public double parseDouble(int field) {
+		int start = fieldStarts[field];
+		int end = fieldEnds[field];
+		// leading and trailing whitespace is ignored, as in Double.parseDouble
+		while (start < end && (buffer[start] & 0xff) <= ' ')
+			start++;
+		while (end > start && (buffer[end - 1] & 0xff) <= ' ')
+			end--;
+		int i = start;
+		boolean negative = false;
+		if (i < end && (buffer[i] == '-' || buffer[i] == '+')) {
+			negative = (buffer[i] == '-');
+			i++;
+		}
+		long mantissa = 0;
+		int digits = 0;     // significant digits in the mantissa
+		int exponent = 0;   // decimal exponent applied to the mantissa
+		boolean anyDigits = false;
+		boolean decimalPoint = false;
+		for (; i < end; i++) {
+			byte b = buffer[i];
+			if (b >= '0' && b <= '9') {
+				anyDigits = true;
+				if (mantissa == 0 && b == '0') {
+					// leading zeros are not significant
+					if (decimalPoint)
+						exponent--;
+					continue;
+				}
+				if (digits == 18)
+					return(parseDoubleSlowly(start, end));
+				mantissa = mantissa * 10 + (b - '0');
+				digits++;
+				if (decimalPoint)
+					exponent--;
+			} else if (b == '.' && !decimalPoint) {
+				decimalPoint = true;
+			} else
+				break;
+		}
+		if (!anyDigits)
+			return(parseDoubleSlowly(start, end));
+		if (i < end && (buffer[i] == 'e' || buffer[i] == 'E')) {
+			i++;
+			boolean negativeExponent = false;
+			if (i < end && (buffer[i] == '-' || buffer[i] == '+')) {
+				negativeExponent = (buffer[i] == '-');
+				i++;
+			}
+			int exponentValue = 0;
+			int exponentDigits = 0;
+			for (; i < end && buffer[i] >= '0' && buffer[i] <= '9'; i++) {
+				exponentValue = exponentValue * 10 + (buffer[i] - '0');
+				if (++exponentDigits > 6)
+					return(parseDoubleSlowly(start, end));
+			}
+			if (exponentDigits == 0)
+				return(parseDoubleSlowly(start, end));
+			exponent += negativeExponent? -exponentValue : exponentValue;
+		}
+		if (i != end)
+			return(parseDoubleSlowly(start, end));
+		if (mantissa == 0)
+			return(negative? -0.0 : 0.0);
+		if (mantissa > MAX_EXACT_MANTISSA || exponent < -22 || exponent > 22)
+			return(parseDoubleSlowly(start, end));
+		double value = (double)mantissa;
+		if (exponent < 0)
+			value = value / POWERS_OF_TEN[-exponent];
+		else
+			value = value * POWERS_OF_TEN[exponent];
+		return(negative? -value : value);
+	} //end of parseDouble
+
+
+	private double parseDoubleSlowly(int start, int end) {
+		return(Double.parseDouble(new String(buffer, start, end - start, StandardCharsets.ISO_8859_1)));
+	} //end of parseDoubleSlowly
+
+
+	public void close() throws IOException {
+		mapped = null;
+		if (source != null)
+			source.close();
+	} //end of close
+
+} //end of class DelimitedRowReader
@@ -0,0 +1,400 @@
+package edu.indiana.slis.pubmedgraphtools;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+
+
+/**
+ * EdgeGraph
+ * A weighted graph of the edges written by ContributedBy (MeSH term to
+ * contributor) or coAuthor (author to co-author), held in compressed sparse row
+ * form and memory mapped from a file, so lookups need neither a database nor
+ * the edges on the heap.
+ *
+ * Every node ID is given an int index in the order of its UTF-8 bytes, so a node
+ * is found with a binary search.  The edges out of each node (forward) and into
+ * each node (reverse) are kept as an int array of row offsets, an int array of
+ * the nodes at the other end, and a float array of the weights.  The edges of a
+ * row are sorted by descending weight, so the top K neighbors of a node are the
+ * first K edges of its row.
+ *
+ * Graph layout, after the header: the name offsets and the name blob (padded to
+ * 4 bytes), then the forward offsets, nodes and weights, then the reverse
+ * offsets, nodes and weights.  Each section is mapped on its own, so a graph can
+ * be larger than 2GB, although no one array can be.
+ */
+public class EdgeGraph {
+	private final static int GRAPH_MAGIC = 0x50474353; // "PGCS"
+	private final static int GRAPH_VERSION = 1;
+	private final static int HEADER_SIZE = 20;
+	private final static int MAX_EDGES = Integer.MAX_VALUE / 4; // the edges of an int or float section
+
+	private int nodeCount = 0;
+	private int edgeCount = 0;
+	private IntBuffer nameOffsets = null;
+	private ByteBuffer nameBlob = null;
+	private IntBuffer forwardOffsets = null;
+	private IntBuffer forwardNodes = null;
+	private FloatBuffer forwardWeights = null;
+	private IntBuffer reverseOffsets = null;
+	private IntBuffer reverseNodes = null;
+	private FloatBuffer reverseWeights = null;
+
+
+	private EdgeGraph() {
+	}
+
+
+	/**
+	 * open
+	 * Opens a saved graph through memory mapping.  The mappings stay valid after
+	 * the file is closed.
+	 * @param graphFile  File written by build
+	 */
+	public static EdgeGraph open(File graphFile) throws IOException {
+		FileInputStream stream = new FileInputStream(graphFile);
+		try {
+			FileChannel channel = stream.getChannel();
+			ByteBuffer header = map(channel, 0, HEADER_SIZE);
+			if (header.getInt() != GRAPH_MAGIC || header.getInt() != GRAPH_VERSION)
+				throw new IOException("The file " + graphFile + " is not an edge graph.");
+			EdgeGraph graph = new EdgeGraph();
+			graph.nodeCount = header.getInt();
+			graph.edgeCount = header.getInt();
+			int nameBlobLength = header.getInt();
+			long position = HEADER_SIZE;
+			long offsetsLength = 4L * (graph.nodeCount + 1);
+			long edgesLength = 4L * graph.edgeCount;
+			graph.nameOffsets = map(channel, position, offsetsLength).asIntBuffer();
+			graph.nameBlob = map(channel, position += offsetsLength, nameBlobLength);
+			position += nameBlobLength + IndexFiles.padding(nameBlobLength);
+			graph.forwardOffsets = map(channel, position, offsetsLength).asIntBuffer();
+			graph.forwardNodes = map(channel, position += offsetsLength, edgesLength).asIntBuffer();
+			graph.forwardWeights = map(channel, position += edgesLength, edgesLength).asFloatBuffer();
+			graph.reverseOffsets = map(channel, position += edgesLength, offsetsLength).asIntBuffer();
+			graph.reverseNodes = map(channel, position += offsetsLength, edgesLength).asIntBuffer();
+			graph.reverseWeights = map(channel, position += edgesLength, edgesLength).asFloatBuffer();
+			return(graph);
+		} finally {
+			stream.close();
+		}
+	} //end of open
+
+
+	private static ByteBuffer map(FileChannel channel, long position, long length) throws IOException {
+		if (position + length > channel.size())
+			throw new IOException("The edge graph is truncated.");
+		return(channel.map(FileChannel.MapMode.READ_ONLY, position, length));
+	} //end of map
+
+
+	/**
+	 * build
+	 * Reads comma separated edge files, with the source ID, the target ID and the
+	 * weight in the first three columns as ContributedBy and coAuthor write them,
+	 * and saves their graph.  Any further columns, such as labels, are ignored.
+	 * The graph is written to a temporary file and then renamed.
+	 * @param edgeFiles  File array of the edge files, such as the shards of one output
+	 * @param graphFile  File to write the graph to
+	 */
+	public static void build(File[] edgeFiles, File graphFile) throws IOException {
+		HashMap<String, Integer> ids = new HashMap<String, Integer>();
+		int[] sources = new int[1024];
+		int[] targets = new int[1024];
+		float[] weights = new float[1024];
+		int edges = 0;
+		for (File edgeFile : edgeFiles) {
+			DelimitedRowReader reader = DelimitedRowReader.open(edgeFile, ',');
+			try {
+				while (reader.nextRow()) {
+					if (reader.getFieldCount() < 3)
+						continue;
+					if (edges == MAX_EDGES)
+						throw new IOException("There are too many edges for one graph.");
+					if (edges == sources.length) {
+						int capacity = (int)Math.min((long)edges * 2, MAX_EDGES);
+						sources = Arrays.copyOf(sources, capacity);
+						targets = Arrays.copyOf(targets, capacity);
+						weights = Arrays.copyOf(weights, capacity);
+					}
+					sources[edges] = getIndex(ids, reader.getString(0));
+					targets[edges] = getIndex(ids, reader.getString(1));
+					weights[edges] = (float)reader.parseDouble(2);
+					edges++;
+				}
+			} finally {
+				reader.close();
+			}
+		}
+
+		// number the nodes in the order of their bytes, so they can be searched
+		final byte[][] names = new byte[ids.size()][];
+		for (String id : ids.keySet())
+			names[ids.get(id)] = id.getBytes(StandardCharsets.UTF_8);
+		ids = null;
+		Integer[] order = new Integer[names.length];
+		for (int i = 0; i < order.length; i++)
+			order[i] = i;
+		Arrays.sort(order, new Comparator<Integer>() {
+			public int compare(Integer a, Integer b) {
+				return(IndexFiles.compareBytes(names[a], 0, names[a].length, names[b], 0, names[b].length));
+			}
+		});
+		int[] renumber = new int[names.length];
+		for (int i = 0; i < order.length; i++)
+			renumber[order[i]] = i;
+		for (int i = 0; i < edges; i++) {
+			sources[i] = renumber[sources[i]];
+			targets[i] = renumber[targets[i]];
+		}
+		renumber = null;
+		long nameBlobLength = 0;
+		for (byte[] name : names)
+			nameBlobLength += name.length;
+		if (nameBlobLength > Integer.MAX_VALUE)
+			throw new IOException("The node IDs are too large for one graph.");
+
+		DataOutputStream out = IndexFiles.createTemp(graphFile);
+		try {
+			out.writeInt(GRAPH_MAGIC);
+			out.writeInt(GRAPH_VERSION);
+			out.writeInt(names.length);
+			out.writeInt(edges);
+			out.writeInt((int)nameBlobLength);
+			int offset = 0;
+			out.writeInt(offset);
+			for (Integer node : order)
+				out.writeInt(offset += names[node].length);
+			for (Integer node : order)
+				out.write(names[node]);
+			for (int i = IndexFiles.padding((int)nameBlobLength); i > 0; i--)
+				out.write(0);
+			writeRows(out, names.length, edges, sources, targets, weights);
+			writeRows(out, names.length, edges, targets, sources, weights);
+		} finally {
+			out.close();
+		}
+		IndexFiles.replace(graphFile);
+	} //end of build
+
+
+	private static int getIndex(HashMap<String, Integer> ids, String id) {
+		Integer index = ids.get(id);
+		if (index == null) {
+			index = ids.size();
+			ids.put(id, index);
+		}
+		return(index);
+	} //end of getIndex
+
+
+	/**
+	 * writeRows
+	 * Writes the edges grouped into a row for each node at one end, with the
+	 * edges of each row sorted by descending weight and then by the node at the
+	 * other end.
+	 */
+	private static void writeRows(DataOutputStream out, int nodes, int edges,
+			int[] rowNodes, int[] otherNodes, float[] weights) throws IOException {
+		int[] offsets = new int[nodes + 1];
+		for (int i = 0; i < edges; i++)
+			offsets[rowNodes[i] + 1]++;
+		for (int i = 0; i < nodes; i++)
+			offsets[i + 1] += offsets[i];
+		// Each edge is packed into a long that sorts in the order of the row: the
+		// weight, as an int with the order of the floats, inverted in the high
+		// half, and the other node in the low half.
+		long[] packed = new long[edges];
+		int[] next = Arrays.copyOf(offsets, nodes);
+		for (int i = 0; i < edges; i++) {
+			int bits = Float.floatToIntBits(weights[i]);
+			int key = bits ^ ((bits >> 31) & 0x7fffffff);
+			packed[next[rowNodes[i]]++] = ((long)~key << 32) | (otherNodes[i] & 0xffffffffL);
+		}
+		next = null;
+		for (int node = 0; node < nodes; node++)
+			Arrays.sort(packed, offsets[node], offsets[node + 1]);
+		for (int offset : offsets)
+			out.writeInt(offset);
+		for (long edge : packed)
+			out.writeInt((int)edge);
+		for (long edge : packed) {
+			int key = ~(int)(edge >> 32);
+			out.writeInt(key ^ ((key >> 31) & 0x7fffffff));
+		}
+	} //end of writeRows
+
+
+	/**
+	 * find
+	 * @return  the index of the node with the ID, or -1 if it is not in the graph
+	 */
+	public int find(String id) {
+		byte[] bytes = id.getBytes(StandardCharsets.UTF_8);
+		int low = 0;
+		int high = nodeCount - 1;
+		while (low <= high) {
+			int middle = (low + high) >>> 1;
+			int result = compareName(middle, bytes);
+			if (result < 0)
+				low = middle + 1;
+			else if (result > 0)
+				high = middle - 1;
+			else
+				return(middle);
+		}
+		return(-1);
+	} //end of find
+
+
+	/**
+	 * compareName
+	 * Compares the ID of a node with an ID in bytes, as unsigned bytes.
+	 */
+	private int compareName(int node, byte[] id) {
+		int nameStart = nameOffsets.get(node);
+		int nameLength = nameOffsets.get(node + 1) - nameStart;
+		int length = Math.min(nameLength, id.length);
+		for (int i = 0; i < length; i++) {
+			int difference = (nameBlob.get(nameStart + i) & 0xff) - (id[i] & 0xff);
+			if (difference != 0)
+				return(difference);
+		}
+		return(nameLength - id.length);
+	} //end of compareName
+
+
+	/**
+	 * getId
+	 * @return  String with the ID of a node
+	 */
+	public String getId(int node) {
+		int nameStart = nameOffsets.get(node);
+		byte[] name = new byte[nameOffsets.get(node + 1) - nameStart];
+		ByteBuffer view = nameBlob.duplicate();
+		view.position(nameStart);
+		view.get(name);
+		return(new String(name, StandardCharsets.UTF_8));
+	} //end of getId
+
+
+	public int getNodeCount() {
+		return(nodeCount);
+	}
+
+
+	public int getEdgeCount() {
+		return(edgeCount);
+	}
+
+
+	public int getOutDegree(int node) {
+		return(forwardOffsets.get(node + 1) - forwardOffsets.get(node));
+	}
+
+
+	public int getInDegree(int node) {
+		return(reverseOffsets.get(node + 1) - reverseOffsets.get(node));
+	}
+
+
+	/**
+	 * getNeighbors
+	 * Gets the top K edges out of a node, such as the contributors of a MeSH term.
+	 * @param nodes    int array for the nodes at the other end of the edges
+	 * @param weights  float array for the weights of the edges
+	 * @return         integer with the number of edges, which is at most k and the
+	 *                 length of the arrays
+	 */
+	public int getNeighbors(int node, int k, int[] nodes, float[] weights) {
+		return(getRow(forwardOffsets, forwardNodes, forwardWeights, node, k, nodes, weights));
+	} //end of getNeighbors
+
+
+	/**
+	 * getReverseNeighbors
+	 * Gets the top K edges into a node, such as the MeSH terms a contributor
+	 * contributes to.
+	 * @return  integer with the number of edges, as for getNeighbors
+	 */
+	public int getReverseNeighbors(int node, int k, int[] nodes, float[] weights) {
+		return(getRow(reverseOffsets, reverseNodes, reverseWeights, node, k, nodes, weights));
+	} //end of getReverseNeighbors
+
+
+	private static int getRow(IntBuffer offsets, IntBuffer rowNodes, FloatBuffer rowWeights,
+			int node, int k, int[] nodes, float[] weights) {
+		int start = offsets.get(node);
+		int count = Math.min(Math.min(k, offsets.get(node + 1) - start),
+				Math.min(nodes.length, weights.length));
+		for (int i = 0; i < count; i++) {
+			nodes[i] = rowNodes.get(start + i);
+			weights[i] = rowWeights.get(start + i);
+		}
+		return(count);
+	} //end of getRow
+
+
+	/**
+	 * main
+	 * EdgeGraph build graph file [edge file]...  builds a graph from edge files.<br/>
+	 * EdgeGraph neighbors graph file ID [k]      prints the top k (default 10) edges out of a node.<br/>
+	 * EdgeGraph reverse graph file ID [k]        prints the top k edges into a node.<br/>
+	 * Edges are printed as "source,target,weight" lines.
+	 */
+	public static void main(String[] args) throws IOException {
+		if (args.length >= 3 && "build".equals(args[0])) {
+			File[] edgeFiles = new File[args.length - 2];
+			for (int i = 2; i < args.length; i++)
+				edgeFiles[i - 2] = new File(args[i]);
+			build(edgeFiles, new File(args[1]));
+			return;
+		}
+		boolean reverse = (args.length > 0 && "reverse".equals(args[0]));
+		if (args.length < 3 || args.length > 4 || !(reverse || "neighbors".equals(args[0]))) {
+			usage();
+			return;
+		}
+		int k = 10;
+		try {
+			if (args.length > 3)
+				k = Integer.parseInt(args[3]);
+		} catch (NumberFormatException e) {
+			usage();
+			return;
+		}
+		EdgeGraph graph = open(new File(args[1]));
+		int node = graph.find(args[2]);
+		if (node < 0) {
+			System.out.println("The ID " + args[2] + " is not in the graph.");
+			return;
+		}
+		int degree = reverse? graph.getInDegree(node) : graph.getOutDegree(node);
+		int[] nodes = new int[Math.max(0, Math.min(k, degree))];
+		float[] weights = new float[nodes.length];
+		int count = reverse? graph.getReverseNeighbors(node, k, nodes, weights) :
+				graph.getNeighbors(node, k, nodes, weights);
+		for (int i = 0; i < count; i++) {
+			if (reverse)
+				System.out.println(graph.getId(nodes[i]) + "," + args[2] + "," + weights[i]);
+			else
+				System.out.println(args[2] + "," + graph.getId(nodes[i]) + "," + weights[i]);
+		}
+	} //end of main
+
+
+	private static void usage() {
+		System.out.println("EdgeGraph build graph file [edge file]... | neighbors graph file ID [k] | reverse graph file ID [k]");
+	} //end of usage
+
+} //end of class EdgeGraph
@@ -0,0 +1,41 @@
+package edu.indiana.slis.pubmedgraphtools;
+
+import java.io.IOException;
+
+
+/**
+ * EdgeSink
+ * Where the edges of a ContributedBy run are written.  The edges of each MeSH
+ * term are started with startTerm, and flush is called once all of a data
+ * file's edges have been added.  Sinks are only used by the writing thread.
+ */
+public interface EdgeSink {
+	/**
+	 * startTerm
+	 * @param meshTerm    String with the qualified descriptor the next edges are for
+	 * @param termLabels  String with the label columns of the term, starting with a
+	 *                    comma, or an empty string without labels
+	 */
+	void startTerm(String meshTerm, String termLabels) throws IOException;
+
+	/**
+	 * addEdge
+	 * Adds an edge from the current MeSH term to a contributor.
+	 */
+	void addEdge(String contributorId, double weight) throws IOException;
+
+	/**
+	 * flush
+	 * Writes out the edges added so far.
+	 */
+	void flush() throws IOException;
+
+	/**
+	 * getBytesWritten
+	 * @return  long with the bytes written to the output, which is the position in
+	 *          the output after a flush
+	 */
+	long getBytesWritten();
+
+	void close() throws IOException;
+} //end of interface EdgeSink
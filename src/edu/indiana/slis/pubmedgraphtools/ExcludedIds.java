@@ -0,0 +1,376 @@
+package edu.indiana.slis.pubmedgraphtools;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+
+/**
+ * ExcludedIds
+ * A set of IDs that can be checked directly against a range of bytes in a row
+ * buffer (see DelimitedRowReader), so a row does not need to be turned into a
+ * String just to find out whether it is excluded.
+ *
+ * Numeric IDs (PMIDs, author IDs) are stored as primitive longs: either a sorted
+ * array searched with a binary search, or a bitmap when the IDs are dense enough
+ * for the bitmap to be smaller.  Any other IDs are kept as UTF-8 bytes in a single
+ * array with an open-addressing hash table of offsets into it.  Only IDs written
+ * in canonical form (see IndexFiles.parseCanonical) are treated as numeric.
+ *
+ * IDs are added and then seal() is called, after which the set can be shared by
+ * any number of threads.  A sealed set can be saved as an index file and read
+ * back with memory mapping, which skips parsing the text file on later runs.
+ */
+public class ExcludedIds {
+	private final static int INDEX_MAGIC = 0x50474558; // "PGEX"
+	private final static int INDEX_VERSION = 1;
+	private final static String INDEX_SUFFIX = ".idx";
+	private final static int INDEX_HEADER_LENGTH = 56;
+
+	// numeric IDs: a sorted array, or a bitmap starting at bitmapBase
+	private long[] numbers = new long[64];
+	private int numberCount = 0;
+	private boolean bitmap = false;
+	private long bitmapBase = 0;
+	// other IDs: UTF-8 bytes of each ID stored end to end, with the start of
+	// each ID in stringOffsets and a hash table of (ID index + 1) values
+	private byte[] strings = new byte[256];
+	private int[] stringOffsets = new int[65];
+	private int stringCount = 0;
+	private int[] table = new int[64];
+	private boolean sealed = false;
+
+
+	/**
+	 * add
+	 * @param id  String with an ID to be excluded
+	 */
+	public void add(String id) {
+		byte[] key = id.getBytes(StandardCharsets.UTF_8);
+		add(key, 0, key.length);
+	} //end of add
+
+
+	/**
+	 * add
+	 * Adds the ID held in a range of a byte array.
+	 */
+	public void add(byte[] buffer, int start, int end) {
+		if (sealed)
+			throw new IllegalStateException("IDs cannot be added after the set is sealed.");
+		long number = IndexFiles.parseCanonical(buffer, start, end);
+		if (number >= 0) {
+			if (numberCount == numbers.length)
+				numbers = Arrays.copyOf(numbers, numberCount * 2);
+			numbers[numberCount++] = number;
+		} else if (findString(buffer, start, end) < 0)
+			addString(buffer, start, end);
+	} //end of add
+
+
+	/**
+	 * seal
+	 * Sorts the numeric IDs (removing duplicates) and chooses between the sorted
+	 * array and a bitmap, whichever is smaller.
+	 */
+	public void seal() {
+		if (sealed)
+			return;
+		Arrays.sort(numbers, 0, numberCount);
+		int unique = 0;
+		for (int i = 0; i < numberCount; i++) {
+			if (unique == 0 || numbers[i] != numbers[unique - 1])
+				numbers[unique++] = numbers[i];
+		}
+		numberCount = unique;
+		if (numberCount > 0) {
+			long range = numbers[numberCount - 1] - numbers[0] + 1;
+			long words = (range + 63) / 64;
+			if (words < numberCount && words < Integer.MAX_VALUE) {
+				long[] bits = new long[(int)words];
+				bitmapBase = numbers[0];
+				for (int i = 0; i < numberCount; i++) {
+					long bit = numbers[i] - bitmapBase;
+					bits[(int)(bit >>> 6)] |= 1L << bit;
+				}
+				numbers = bits;
+				bitmap = true;
+			} else
+				numbers = Arrays.copyOf(numbers, numberCount);
+		} else
+			numbers = new long[0];
+		strings = Arrays.copyOf(strings, stringOffsets[stringCount]);
+		stringOffsets = Arrays.copyOf(stringOffsets, stringCount + 1);
+		sealed = true;
+	} //end of seal
+
+
+	/**
+	 * contains
+	 * @param buffer  byte array holding the ID
+	 * @param start   integer with the position of the first byte of the ID
+	 * @param end     integer with the position after the last byte of the ID
+	 * @return        true if the ID is in the set
+	 */
+	public boolean contains(byte[] buffer, int start, int end) {
+		if (!sealed)
+			throw new IllegalStateException("The set must be sealed before it is searched.");
+		long number = IndexFiles.parseCanonical(buffer, start, end);
+		if (number >= 0) {
+			if (!bitmap)
+				return(Arrays.binarySearch(numbers, number) >= 0);
+			long bit = number - bitmapBase;
+			if (bit < 0 || bit >= (long)numbers.length * 64)
+				return(false);
+			return((numbers[(int)(bit >>> 6)] & (1L << bit)) != 0);
+		}
+		return(stringCount > 0 && findString(buffer, start, end) >= 0);
+	} //end of contains
+
+
+	public boolean contains(String id) {
+		byte[] key = id.getBytes(StandardCharsets.UTF_8);
+		return(contains(key, 0, key.length));
+	} //end of contains
+
+
+	public int size() {
+		return numberCount + stringCount;
+	}
+
+	public int getNumericCount() {
+		return numberCount;
+	}
+
+	public boolean isBitmap() {
+		return bitmap;
+	}
+
+
+	/**
+	 * getMemorySize
+	 * @return  long with the approximate number of bytes used by the set's arrays
+	 */
+	public long getMemorySize() {
+		return(8L * numbers.length + strings.length + 4L * stringOffsets.length + 4L * table.length);
+	} //end of getMemorySize
+
+
+	/**
+	 * findString
+	 * @return  the index of the non-numeric ID, or -1 if it is not in the set
+	 */
+	private int findString(byte[] buffer, int start, int end) {
+		int mask = table.length - 1;
+		int slot = hash(buffer, start, end) & mask;
+		int length = end - start;
+		int entry;
+		while ((entry = table[slot]) != 0) {
+			int index = entry - 1;
+			int offset = stringOffsets[index];
+			if (stringOffsets[index + 1] - offset == length) {
+				int i = 0;
+				while (i < length && strings[offset + i] == buffer[start + i])
+					i++;
+				if (i == length)
+					return(index);
+			}
+			slot = (slot + 1) & mask;
+		}
+		return(-1);
+	} //end of findString
+
+
+	private void addString(byte[] buffer, int start, int end) {
+		int length = end - start;
+		int offset = stringOffsets[stringCount];
+		if (offset + length > strings.length)
+			strings = Arrays.copyOf(strings, Math.max(strings.length * 2, offset + length));
+		System.arraycopy(buffer, start, strings, offset, length);
+		if (stringCount + 2 > stringOffsets.length)
+			stringOffsets = Arrays.copyOf(stringOffsets, stringOffsets.length * 2);
+		stringOffsets[stringCount + 1] = offset + length;
+		stringCount++;
+		if (stringCount * 2 > table.length) {
+			// a larger table is filled again from the stored IDs
+			table = new int[table.length * 2];
+			for (int index = 0; index < stringCount; index++)
+				insert(index);
+		} else
+			insert(stringCount - 1);
+	} //end of addString
+
+
+	private void insert(int index) {
+		int mask = table.length - 1;
+		int offset = stringOffsets[index];
+		int slot = hash(strings, offset, stringOffsets[index + 1]) & mask;
+		while (table[slot] != 0)
+			slot = (slot + 1) & mask;
+		table[slot] = index + 1;
+	} //end of insert
+
+
+	private static int hash(byte[] bytes, int start, int end) {
+		int h = 0;
+		for (int i = start; i < end; i++)
+			h = 31 * h + bytes[i];
+		return(h ^ (h >>> 16));
+	} //end of hash
+
+
+	/**
+	 * readText
+	 * Reads a text file with one ID on each line.  Blank lines are skipped and
+	 * whitespace around an ID is ignored.  The returned set is sealed.
+	 */
+	public static ExcludedIds readText(File textFile) throws IOException {
+		ExcludedIds ids = new ExcludedIds();
+		DelimitedRowReader reader = DelimitedRowReader.open(textFile, '\n');
+		try {
+			while (reader.nextRow()) {
+				byte[] buffer = reader.getBuffer();
+				int start = reader.getFieldStart(0);
+				int end = reader.getFieldEnd(0);
+				while (start < end && (buffer[start] & 0xff) <= ' ')
+					start++;
+				while (end > start && (buffer[end - 1] & 0xff) <= ' ')
+					end--;
+				if (end > start)
+					ids.add(buffer, start, end);
+			}
+		} finally {
+			reader.close();
+		}
+		ids.seal();
+		return(ids);
+	} //end of readText
+
+
+	/**
+	 * getIndexFile
+	 * @return  the File used to save the index for a text file of IDs
+	 */
+	public static File getIndexFile(File textFile) {
+		return(new File(textFile.getPath() + INDEX_SUFFIX));
+	} //end of getIndexFile
+
+
+	/**
+	 * readIndex
+	 * Reads a saved index through memory mapping.
+	 * @param indexFile  File written by writeIndex
+	 * @param textFile   File with the IDs the index was built from
+	 * @return           the sealed set, or null if the index does not exist or the
+	 *                   text file has changed since the index was written
+	 * @throws IOException  if the index is truncated or its arrays are not consistent
+	 */
+	public static ExcludedIds readIndex(File indexFile, File textFile) throws IOException {
+		if (!indexFile.canRead())
+			return(null);
+		FileInputStream stream = new FileInputStream(indexFile);
+		try {
+			FileChannel channel = stream.getChannel();
+			MappedByteBuffer data = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			if (data.remaining() < INDEX_HEADER_LENGTH || data.getInt() != INDEX_MAGIC || 
+					data.getInt() != INDEX_VERSION)
+				return(null);
+			if (data.getLong() != textFile.length() || data.getLong() != textFile.lastModified())
+				return(null); // the index is out of date
+			ExcludedIds ids = new ExcludedIds();
+			ids.bitmap = (data.getInt() == 1);
+			ids.bitmapBase = data.getLong();
+			ids.numberCount = data.getInt();
+			int numbersLength = data.getInt();
+			ids.stringCount = data.getInt();
+			int stringsLength = data.getInt();
+			int tableLength = data.getInt();
+			if (ids.numberCount < 0 || numbersLength < 0 || ids.stringCount < 0 || stringsLength < 0 || 
+					Integer.bitCount(tableLength) != 1 || tableLength <= ids.stringCount)
+				throw new IOException("The index file " + indexFile + " is not consistent.");
+			if (8L * numbersLength + 4L * (ids.stringCount + 1L) + stringsLength + 4L * tableLength > 
+					data.remaining())
+				throw new IOException("The index file " + indexFile + " is truncated.");
+			ids.numbers = new long[numbersLength];
+			ids.strings = new byte[stringsLength];
+			ids.stringOffsets = new int[ids.stringCount + 1];
+			ids.table = new int[tableLength];
+			data.asLongBuffer().get(ids.numbers);
+			data.position(data.position() + 8 * ids.numbers.length);
+			data.asIntBuffer().get(ids.stringOffsets);
+			data.position(data.position() + 4 * ids.stringOffsets.length);
+			data.get(ids.strings);
+			data.asIntBuffer().get(ids.table);
+			ids.checkIndex(indexFile);
+			ids.sealed = true;
+			return(ids);
+		} finally {
+			stream.close();
+		}
+	} //end of readIndex
+
+
+	/**
+	 * checkIndex
+	 * Checks that the string offsets and the hash table read from an index stay
+	 * within the arrays they point into, and that the table has one filled slot for
+	 * each string, so that a damaged index is rejected when it is read rather than
+	 * failing in the middle of a run.  As the table is larger than the number of
+	 * strings, it then always has an empty slot to end the search in findString.
+	 */
+	private void checkIndex(File indexFile) throws IOException {
+		boolean consistent = (stringOffsets[0] == 0 && stringOffsets[stringCount] == strings.length);
+		for (int i = 0; i < stringCount && consistent; i++)
+			consistent = (stringOffsets[i] <= stringOffsets[i + 1]);
+		int filled = 0;
+		for (int i = 0; i < table.length && consistent; i++) {
+			consistent = (table[i] >= 0 && table[i] <= stringCount);
+			if (table[i] != 0)
+				filled++;
+		}
+		if (!consistent || filled != stringCount)
+			throw new IOException("The index file " + indexFile + " is not consistent.");
+	} //end of checkIndex
+
+
+	/**
+	 * writeIndex
+	 * Saves a sealed set so that it can be read back with readIndex.  The size and
+	 * modification time of the text file are recorded so that a stale index is not
+	 * used.  The index is written to a temporary file and then renamed.
+	 */
+	public void writeIndex(File indexFile, File textFile) throws IOException {
+		if (!sealed)
+			throw new IllegalStateException("The set must be sealed before it is saved.");
+		DataOutputStream out = IndexFiles.createTemp(indexFile);
+		try {
+			out.writeInt(INDEX_MAGIC);
+			out.writeInt(INDEX_VERSION);
+			out.writeLong(textFile.length());
+			out.writeLong(textFile.lastModified());
+			out.writeInt(bitmap? 1 : 0);
+			out.writeLong(bitmapBase);
+			out.writeInt(numberCount);
+			out.writeInt(numbers.length);
+			out.writeInt(stringCount);
+			out.writeInt(strings.length);
+			out.writeInt(table.length);
+			for (long number : numbers)
+				out.writeLong(number);
+			for (int offset : stringOffsets)
+				out.writeInt(offset);
+			out.write(strings);
+			for (int entry : table)
+				out.writeInt(entry);
+		} finally {
+			out.close();
+		}
+		IndexFiles.replace(indexFile);
+	} //end of writeIndex
+
+} //end of class ExcludedIds
@@ -0,0 +1,193 @@
+package edu.indiana.slis.pubmedgraphtools;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayDeque;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+
+/**
+ * FileDiscovery
+ * Finds the data files under a directory on a thread of its own and hands them
+ * to the processing stage through a bounded queue, so the tree is scanned while
+ * the files already found are being processed, and a large tree is never held
+ * in memory as a whole.
+ *
+ * The directories are scanned breadth first, each with a DirectoryStream, so the
+ * files are found in the same order as with File.list.  The attributes of each
+ * entry are read once, which gives its type as well as the size and modification
+ * time used by a FileManifest.
+ *
+ * Files can be selected by glob patterns on their names, such as author_* for
+ * the files of one contributor type.  A file is used if it matches one of the
+ * include patterns (or there are none) and none of the exclude patterns.
+ * Directories are always scanned.
+ */
+public class FileDiscovery implements Runnable {
+	private final static DataFile END = new DataFile(null, 0, 0); // marks the end of the files
+
+	private File root = null;
+	private BlockingQueue<DataFile> queue = null;
+	private PathMatcher[] includes = new PathMatcher[0];
+	private PathMatcher[] excludes = new PathMatcher[0];
+	private Thread thread = null;
+	private volatile Exception error = null;
+	private boolean finished = false;
+
+
+	/**
+	 * @param root       File with the directory to scan
+	 * @param queueSize  integer with the number of files that can be found ahead of
+	 *                   the processing stage
+	 */
+	public FileDiscovery(File root, int queueSize) {
+		this.root = root;
+		this.queue = new ArrayBlockingQueue<DataFile>(queueSize);
+	} //end of constructor
+
+
+	/**
+	 * setGlobs
+	 * @param includeGlobs  String array of glob patterns for the names of the files to
+	 *                      use, or null to use every file
+	 * @param excludeGlobs  String array of glob patterns for the names of the files to
+	 *                      skip, or null
+	 */
+	public void setGlobs(String[] includeGlobs, String[] excludeGlobs) {
+		includes = createMatchers(includeGlobs);
+		excludes = createMatchers(excludeGlobs);
+	} //end of setGlobs
+
+
+	private static PathMatcher[] createMatchers(String[] globs) {
+		if (globs == null)
+			return(new PathMatcher[0]);
+		PathMatcher[] matchers = new PathMatcher[globs.length];
+		for (int i = 0; i < globs.length; i++)
+			matchers[i] = FileSystems.getDefault().getPathMatcher("glob:" + globs[i].trim());
+		return(matchers);
+	} //end of createMatchers
+
+
+	/**
+	 * start
+	 * Starts scanning the directory on a daemon thread.
+	 */
+	public void start() {
+		thread = new Thread(this, "file-discovery");
+		thread.setDaemon(true);
+		thread.start();
+	} //end of start
+
+
+	/**
+	 * next
+	 * Waits for the next file to be found.
+	 * @return  the next file, or null once the whole tree has been scanned
+	 * @throws IOException  if a directory could not be read
+	 */
+	public DataFile next() throws IOException, InterruptedException {
+		if (finished)
+			return(null);
+		DataFile dataFile = queue.take();
+		if (dataFile != END)
+			return(dataFile);
+		finished = true;
+		if (error instanceof IOException)
+			throw (IOException)error;
+		if (error != null)
+			throw new IOException("The data directory " + root + " could not be scanned: " + error, error);
+		return(null);
+	} //end of next
+
+
+	/**
+	 * close
+	 * Stops the scan if it is still running.
+	 */
+	public void close() {
+		if (thread != null)
+			thread.interrupt();
+	} //end of close
+
+
+	public void run() {
+		try {
+			ArrayDeque<Path> directories = new ArrayDeque<Path>();
+			directories.add(root.toPath());
+			while (!directories.isEmpty()) {
+				DirectoryStream<Path> entries = Files.newDirectoryStream(directories.remove());
+				try {
+					for (Path entry : entries) {
+						BasicFileAttributes attributes = Files.readAttributes(entry, BasicFileAttributes.class);
+						if (attributes.isDirectory())
+							directories.add(entry);
+						else if (isSelected(entry.getFileName()))
+							queue.put(new DataFile(entry.toFile(), attributes.size(),
+									attributes.lastModifiedTime().toMillis()));
+					}
+				} finally {
+					entries.close();
+				}
+			}
+		} catch (InterruptedException e) {
+			return; // closed by the processing stage
+		} catch (Exception e) {
+			error = e;
+		}
+		try {
+			queue.put(END);
+		} catch (InterruptedException e) {}
+	} //end of run
+
+
+	private boolean isSelected(Path name) {
+		boolean included = (includes.length == 0);
+		for (int i = 0; i < includes.length && !included; i++)
+			included = includes[i].matches(name);
+		if (!included)
+			return(false);
+		for (PathMatcher exclude : excludes) {
+			if (exclude.matches(name))
+				return(false);
+		}
+		return(true);
+	} //end of isSelected
+
+
+	/**
+	 * DataFile
+	 * A file that was found, with the size and modification time read with its type.
+	 */
+	public static class DataFile {
+		private File file = null;
+		private long size = 0;
+		private long modified = 0;
+
+		DataFile(File file, long size, long modified) {
+			this.file = file;
+			this.size = size;
+			this.modified = modified;
+		}
+
+		public File getFile() {
+			return file;
+		}
+
+		public long getSize() {
+			return size;
+		}
+
+		public long getModified() {
+			return modified;
+		}
+	} //end of class DataFile
+
+} //end of class FileDiscovery
@@ -0,0 +1,353 @@
+package edu.indiana.slis.pubmedgraphtools;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.zip.CRC32C;
+
+
+/**
+ * FileManifest
+ * Records, for each input file of a run, its path, size, modification time and
+ * a CRC-32C of its contents, along with the range of bytes its edges take up in
+ * the output.  A later run with the same manifest only reads the files that are
+ * new or have changed; the edges of every other file are copied from the
+ * previous output.
+ *
+ * A run writes its output to a working file (the output name with .tmp added)
+ * and appends each file's entry to a journal (the manifest name with .journal
+ * added) as soon as its edges have been flushed.  When the run finishes, the
+ * working file replaces the output and the journal replaces the manifest.  If
+ * a run stops part way, the next run keeps the files already in the journal and
+ * carries on from there, as long as none of those files has changed since.
+ *
+ * The first line of a manifest holds the settings of the run, so an output made
+ * with different settings is never reused.  Each further line is a tab separated
+ * entry: path, size, modification time, hash, output offset, output length and
+ * the number of edges.
+ */
+public class FileManifest {
+	private final static String HEADER = "#pubmed-graph-tools manifest 1";
+	private final static String WORKING_SUFFIX = ".tmp";
+	private final static String JOURNAL_SUFFIX = ".journal";
+	private final static int COPY_BUFFER_SIZE = 256 * 1024;
+
+	private File manifestFile = null;
+	private File journalFile = null;
+	private File outputFile = null;
+	private File workingFile = null;
+	private String settings = null;
+	private HashMap<String, Entry> previous = new HashMap<String, Entry>(); // entries of the last finished run
+	private LinkedHashMap<String, Entry> committed = new LinkedHashMap<String, Entry>(); // entries already in the working file
+	private PrintWriter journal = null;
+	private FileChannel previousOutput = null;
+	private byte[] copyBuffer = null;
+
+
+	/**
+	 * @param manifestFile  File with the manifest of the output
+	 * @param outputFile    File with the output the manifest describes
+	 * @param settings      String describing the settings the output depends on;
+	 *                      it must not contain a line break
+	 */
+	public FileManifest(File manifestFile, File outputFile, String settings) {
+		this.manifestFile = manifestFile;
+		this.journalFile = new File(manifestFile.getPath() + JOURNAL_SUFFIX);
+		this.outputFile = outputFile;
+		this.workingFile = new File(outputFile.getPath() + WORKING_SUFFIX);
+		this.settings = settings;
+	} //end of constructor
+
+
+	/**
+	 * open
+	 * Reads the manifest of the previous run and the journal of an unfinished run,
+	 * if there are any that can be used, and prepares the working file.
+	 * @return  long with the length of the working file, which is where the edges
+	 *          of the next file go
+	 */
+	public long open() throws IOException {
+		previous = readEntries(manifestFile, outputFile);
+		committed = readEntries(journalFile, workingFile);
+		long resumeAt = 0;
+		for (Entry entry : committed.values()) {
+			File file = new File(entry.path);
+			if (file.length() != entry.size || file.lastModified() != entry.modified) {
+				// a file of the unfinished run has changed, so its edges can't be kept
+				committed.clear();
+				resumeAt = 0;
+				break;
+			}
+			resumeAt = Math.max(resumeAt, entry.offset + entry.length);
+		}
+		if (committed.isEmpty()) {
+			journalFile.delete();
+			workingFile.delete();
+		}
+		// drop anything written after the last file in the journal
+		RandomAccessFile working = new RandomAccessFile(workingFile, "rw");
+		try {
+			working.setLength(resumeAt);
+		} finally {
+			working.close();
+		}
+		// the journal is written again, in case its last line was cut short
+		journal = new PrintWriter(new OutputStreamWriter(
+				new FileOutputStream(journalFile), StandardCharsets.UTF_8));
+		journal.print(HEADER + "\n" + settings + "\n");
+		for (Entry entry : committed.values())
+			journal.print(entry.toLine());
+		journal.flush();
+		if (!previous.isEmpty())
+			previousOutput = new FileInputStream(outputFile).getChannel();
+		return(resumeAt);
+	} //end of open
+
+
+	/**
+	 * getWorkingFile
+	 * @return  the File the output is written to until the run finishes
+	 */
+	public File getWorkingFile() {
+		return workingFile;
+	} //end of getWorkingFile
+
+
+	public int getCommittedCount() {
+		return(committed.size());
+	}
+
+
+	/**
+	 * check
+	 * Compares an input file with the manifest.  A file whose size or time has
+	 * changed is hashed, so a file that was only touched or copied is still reused.
+	 * @return  the entry for the file, which tells whether it is already in the
+	 *          working file, can be copied from the previous output, or needs to
+	 *          be processed
+	 */
+	public Entry check(File file) throws IOException {
+		return(check(file, file.length(), file.lastModified()));
+	} //end of check
+
+
+	/**
+	 * check
+	 * Compares an input file with the manifest, using the size and modification
+	 * time that were read when the file was found.
+	 */
+	public Entry check(File file, long size, long modified) throws IOException {
+		String path = file.getPath();
+		Entry done = committed.get(path);
+		if (done != null) {
+			done.state = Entry.COMMITTED;
+			return(done);
+		}
+		Entry entry = new Entry(path, size, modified);
+		Entry old = previous.get(path);
+		if (old != null && old.size == size) {
+			if (old.modified != modified)
+				entry.hash = hash(file);
+			if (old.modified == modified || old.hash == entry.hash) {
+				entry.hash = old.hash;
+				entry.state = Entry.COPY;
+				entry.source = old;
+			}
+		}
+		return(entry);
+	} //end of check
+
+
+	/**
+	 * copy
+	 * Copies the edges of an unchanged file from the previous output.
+	 * @return  long with the number of edges copied
+	 */
+	public long copy(Entry entry, OutputStream out) throws IOException {
+		if (copyBuffer == null)
+			copyBuffer = new byte[COPY_BUFFER_SIZE];
+		ByteBuffer buffer = ByteBuffer.wrap(copyBuffer);
+		long position = entry.source.offset;
+		long end = entry.source.offset + entry.source.length;
+		while (position < end) {
+			buffer.clear();
+			buffer.limit((int)Math.min(copyBuffer.length, end - position));
+			int read = previousOutput.read(buffer, position);
+			if (read < 0)
+				throw new IOException("The previous output " + outputFile + " is shorter than its manifest.");
+			out.write(copyBuffer, 0, read);
+			position += read;
+		}
+		return(entry.source.edges);
+	} //end of copy
+
+
+	/**
+	 * commit
+	 * Records that the edges of a file have been flushed to the working file.
+	 */
+	public void commit(Entry entry, long offset, long length, long edges) throws IOException {
+		entry.offset = offset;
+		entry.length = length;
+		entry.edges = edges;
+		entry.state = Entry.COMMITTED;
+		committed.put(entry.path, entry);
+		journal.print(entry.toLine());
+		journal.flush();
+		if (journal.checkError())
+			throw new IOException("The journal " + journalFile + " could not be written.");
+	} //end of commit
+
+
+	/**
+	 * finish
+	 * Replaces the output with the working file and the manifest with the journal.
+	 * The output must be closed first.
+	 */
+	public void finish() throws IOException {
+		close();
+		if (outputFile.exists() && !outputFile.delete() || !workingFile.renameTo(outputFile))
+			throw new IOException("The output file " + outputFile + " could not be replaced.");
+		if (manifestFile.exists() && !manifestFile.delete() || !journalFile.renameTo(manifestFile))
+			throw new IOException("The manifest " + manifestFile + " could not be replaced.");
+	} //end of finish
+
+
+	/**
+	 * close
+	 * Closes the journal and the previous output, leaving the working file and the
+	 * journal for the next run to resume from.
+	 */
+	public void close() {
+		try {journal.close();}catch(Exception e){}
+		try {previousOutput.close();}catch(Exception e){}
+		journal = null;
+		previousOutput = null;
+	} //end of close
+
+
+	/**
+	 * readEntries
+	 * @return  the entries of a manifest or journal by path, in output order, or no entries if the
+	 *          file does not exist, was made with other settings, or describes
+	 *          more of the output than the output holds
+	 */
+	private LinkedHashMap<String, Entry> readEntries(File file, File output) throws IOException {
+		LinkedHashMap<String, Entry> entries = new LinkedHashMap<String, Entry>();
+		if (!file.canRead() || !output.canRead())
+			return(entries);
+		BufferedReader reader = new BufferedReader(new FileReader(file, StandardCharsets.UTF_8));
+		try {
+			if (!HEADER.equals(reader.readLine()) || !settings.equals(reader.readLine()))
+				return(entries);
+			long end = 0;
+			String line = null;
+			while ((line = reader.readLine()) != null) {
+				Entry entry = Entry.parse(line);
+				if (entry == null)
+					break; // the last line of a journal may be cut short
+				entries.put(entry.path, entry);
+				end = Math.max(end, entry.offset + entry.length);
+			}
+			if (end > output.length())
+				entries.clear();
+		} finally {
+			reader.close();
+		}
+		return(entries);
+	} //end of readEntries
+
+
+	/**
+	 * hash
+	 * @return  the CRC-32C of the contents of a file
+	 */
+	public static long hash(File file) throws IOException {
+		CRC32C crc = new CRC32C();
+		FileInputStream in = new FileInputStream(file);
+		try {
+			FileChannel channel = in.getChannel();
+			ByteBuffer buffer = ByteBuffer.allocateDirect(COPY_BUFFER_SIZE);
+			while (channel.read(buffer) >= 0) {
+				buffer.flip();
+				crc.update(buffer);
+				buffer.clear();
+			}
+		} finally {
+			in.close();
+		}
+		return(crc.getValue());
+	} //end of hash
+
+
+	/**
+	 * Entry
+	 * What the manifest knows about one input file.
+	 */
+	public static class Entry {
+		public final static int PROCESS = 0;   // new or changed, so it needs to be read
+		public final static int COPY = 1;      // unchanged, so its edges are copied
+		public final static int COMMITTED = 2; // its edges are already in the working file
+		private String path = null;
+		private long size = 0;
+		private long modified = 0;
+		private long hash = -1; // -1 until the file has been hashed
+		private long offset = 0;
+		private long length = 0;
+		private long edges = 0;
+		private int state = PROCESS;
+		private Entry source = null; // the entry in the previous manifest to copy from
+
+		Entry(String path, long size, long modified) {
+			this.path = path;
+			this.size = size;
+			this.modified = modified;
+		}
+
+		public int getState() {
+			return state;
+		}
+
+		public boolean isHashed() {
+			return(hash >= 0);
+		}
+
+		public void setHash(long hash) {
+			this.hash = hash;
+		}
+
+		String toLine() {
+			return(path + "\t" + size + "\t" + modified + "\t" + Long.toHexString(hash) + "\t" +
+					offset + "\t" + length + "\t" + edges + "\n");
+		}
+
+		static Entry parse(String line) {
+			String[] fields = line.split("\t");
+			if (fields.length != 7)
+				return(null);
+			try {
+				Entry entry = new Entry(fields[0], Long.parseLong(fields[1]), Long.parseLong(fields[2]));
+				entry.hash = Long.parseLong(fields[3], 16);
+				entry.offset = Long.parseLong(fields[4]);
+				entry.length = Long.parseLong(fields[5]);
+				entry.edges = Long.parseLong(fields[6]);
+				return(entry);
+			} catch (NumberFormatException e) {
+				return(null);
+			}
+		}
+	} //end of class Entry
+
+} //end of class FileManifest
@@ -0,0 +1,100 @@
+package edu.indiana.slis.pubmedgraphtools;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+
+/**
+ * IndexFiles
+ * The helpers shared by the saved indexes (ExcludedIds, LabelIndex, EdgeGraph)
+ * and the code that sorts IDs as bytes: the order of UTF-8 keys, the test for
+ * numeric IDs, and writing an index to a temporary file that then replaces it,
+ * so a run that stops part way never leaves a partial index to be mapped.
+ */
+class IndexFiles {
+	private final static String TEMP_SUFFIX = ".tmp";
+	private final static int MAX_NUMERIC_DIGITS = 18; // always fits in a long
+	private final static int BUFFER_SIZE = 256 * 1024;
+
+
+	private IndexFiles() {
+	}
+
+
+	/**
+	 * compareBytes
+	 * Compares two byte ranges as unsigned bytes, so UTF-8 text sorts by code point.
+	 */
+	static int compareBytes(byte[] a, int startA, int endA, byte[] b, int startB, int endB) {
+		int length = Math.min(endA - startA, endB - startB);
+		for (int i = 0; i < length; i++) {
+			int difference = (a[startA + i] & 0xff) - (b[startB + i] & 0xff);
+			if (difference != 0)
+				return(difference);
+		}
+		return((endA - startA) - (endB - startB));
+	} //end of compareBytes
+
+
+	/**
+	 * parseCanonical
+	 * Only IDs written in canonical form (no sign or leading zeros) are numeric, so
+	 * "007" and "7" remain different IDs, as they are when compared as Strings.
+	 * @return  the value of an ID written as a number in canonical form, or -1 for
+	 *          any other ID
+	 */
+	static long parseCanonical(byte[] buffer, int start, int end) {
+		int length = end - start;
+		if (length == 0 || length > MAX_NUMERIC_DIGITS || (buffer[start] == '0' && length > 1))
+			return(-1);
+		long value = 0;
+		for (int i = start; i < end; i++) {
+			int digit = buffer[i] - '0';
+			if (digit < 0 || digit > 9)
+				return(-1);
+			value = value * 10 + digit;
+		}
+		return(value);
+	} //end of parseCanonical
+
+
+	/**
+	 * padding
+	 * @return  the number of bytes that bring a length up to a multiple of 4
+	 */
+	static int padding(int length) {
+		return((4 - (length & 3)) & 3);
+	} //end of padding
+
+
+	/**
+	 * createTemp
+	 * Opens the temporary file an index is written to before it replaces the index.
+	 * @return  DataOutputStream over the temporary file
+	 */
+	static DataOutputStream createTemp(File indexFile) throws IOException {
+		return(new DataOutputStream(new BufferedOutputStream(
+				new FileOutputStream(getTempFile(indexFile)), BUFFER_SIZE)));
+	} //end of createTemp
+
+
+	/**
+	 * replace
+	 * Replaces an index with the temporary file written through createTemp, which
+	 * must be closed first.
+	 */
+	static void replace(File indexFile) throws IOException {
+		File tempFile = getTempFile(indexFile);
+		if (indexFile.exists() && !indexFile.delete() || !tempFile.renameTo(indexFile))
+			throw new IOException("The index file " + indexFile + " could not be replaced.");
+	} //end of replace
+
+
+	private static File getTempFile(File indexFile) {
+		return(new File(indexFile.getPath() + TEMP_SUFFIX));
+	}
+
+} //end of class IndexFiles
@@ -0,0 +1,339 @@
+package edu.indiana.slis.pubmedgraphtools;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+
+
+/**
+ * LabelIndex
+ * A compiled label table (such as descriptor.txt or qualifier.txt) that is
+ * memory mapped rather than parsed, so opening it takes about the same time
+ * however large the table is, and the labels are not held on the heap.
+ *
+ * The index holds the numeric IDs as a sorted array of longs searched with a
+ * binary search, and an offset table into a single blob of UTF-8 labels.  IDs
+ * that are not numbers in canonical form (no sign or leading zeros, as in
+ * ExcludedIds) are kept in a second sorted table of UTF-8 keys.  The size and
+ * modification time of the text file are recorded, so an index is rebuilt when
+ * the text file changes.
+ *
+ * Index layout, after the header: the numeric keys, the offsets of the other
+ * keys, the key blob (padded to 4 bytes), the label offsets for the numeric keys
+ * followed by the other keys, and the label blob.
+ */
+public class LabelIndex implements LabelSource {
+	private final static int INDEX_MAGIC = 0x50474C42; // "PGLB"
+	private final static int INDEX_VERSION = 1;
+	private final static String INDEX_SUFFIX = ".idx";
+	private final static int INDEX_HEADER_LENGTH = 40;
+
+	private int numericCount = 0;
+	private int stringCount = 0;
+	private LongBuffer numericKeys = null;
+	private IntBuffer keyOffsets = null;
+	private ByteBuffer keyBlob = null;
+	private IntBuffer labelOffsets = null;
+	private ByteBuffer labelBlob = null;
+
+
+	private LabelIndex() {
+	}
+
+
+	/**
+	 * open
+	 * Opens the index for a text table, building and saving it first if there is
+	 * no index yet or the text file has changed since it was built.
+	 * @param textFile  File with the tab separated table of IDs and labels
+	 */
+	public static LabelIndex open(File textFile) throws IOException {
+		File indexFile = getIndexFile(textFile);
+		LabelIndex index = readIndex(indexFile, textFile);
+		if (index == null) {
+			writeIndex(indexFile, textFile);
+			index = readIndex(indexFile, textFile);
+			if (index == null)
+				throw new IOException("The label index " + indexFile + " could not be read after it was built.");
+		}
+		return(index);
+	} //end of open
+
+
+	/**
+	 * getIndexFile
+	 * @return  the File used to save the index for a text table
+	 */
+	public static File getIndexFile(File textFile) {
+		return(new File(textFile.getPath() + INDEX_SUFFIX));
+	} //end of getIndexFile
+
+
+	/**
+	 * readIndex
+	 * Opens a saved index through memory mapping.  The mapping stays valid after
+	 * the file is closed.
+	 * @param indexFile  File written by writeIndex
+	 * @param textFile   File with the table the index was built from
+	 * @return           the index, or null if it does not exist or the text file
+	 *                   has changed since the index was written
+	 * @throws IOException  if the index is truncated or its offsets are not consistent
+	 */
+	public static LabelIndex readIndex(File indexFile, File textFile) throws IOException {
+		if (!indexFile.canRead())
+			return(null);
+		FileInputStream stream = new FileInputStream(indexFile);
+		try {
+			FileChannel channel = stream.getChannel();
+			MappedByteBuffer data = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			if (data.remaining() < INDEX_HEADER_LENGTH)
+				throw new IOException("The label index is damaged.");
+			if (data.getInt() != INDEX_MAGIC || data.getInt() != INDEX_VERSION)
+				return(null);
+			if (data.getLong() != textFile.length() || data.getLong() != textFile.lastModified())
+				return(null); // the index is out of date
+			LabelIndex index = new LabelIndex();
+			index.numericCount = data.getInt();
+			index.stringCount = data.getInt();
+			int keyBlobLength = data.getInt();
+			int labelBlobLength = data.getInt();
+			if (index.numericCount < 0 || index.stringCount < 0 || keyBlobLength < 0 || labelBlobLength < 0 || 
+					8L * index.numericCount + 4L * (index.stringCount + 1L) + keyBlobLength + 
+					IndexFiles.padding(keyBlobLength) + 4L * (index.numericCount + index.stringCount + 1L) + 
+					labelBlobLength > data.remaining())
+				throw new IOException("The label index is damaged.");
+			index.numericKeys = slice(data, 8L * index.numericCount).asLongBuffer();
+			index.keyOffsets = slice(data, 4L * (index.stringCount + 1)).asIntBuffer();
+			index.keyBlob = slice(data, keyBlobLength);
+			data.position(data.position() + IndexFiles.padding(keyBlobLength));
+			index.labelOffsets = slice(data, 4L * (index.numericCount + index.stringCount + 1)).asIntBuffer();
+			index.labelBlob = slice(data, labelBlobLength);
+			if (!isConsistent(index.keyOffsets, keyBlobLength) || !isConsistent(index.labelOffsets, labelBlobLength))
+				throw new IOException("The label index is damaged.");
+			return(index);
+		} finally {
+			stream.close();
+		}
+	} //end of readIndex
+
+
+	/**
+	 * writeIndex
+	 * Reads a tab separated table of IDs and labels and saves its index.  Rows
+	 * without both columns are skipped, and a later row for the same ID replaces
+	 * an earlier one, as in LabelTable.  The index is written to a temporary file
+	 * and then renamed.
+	 */
+	public static void writeIndex(File indexFile, File textFile) throws IOException {
+		// the size and time are taken first, so a change while reading makes the index stale
+		long textLength = textFile.length();
+		long textModified = textFile.lastModified();
+		HashMap<Long, byte[]> numeric = new HashMap<Long, byte[]>();
+		HashMap<String, byte[]> other = new HashMap<String, byte[]>();
+		DelimitedRowReader reader = DelimitedRowReader.open(textFile, '\t');
+		try {
+			while (reader.nextRow()) {
+				if (reader.getFieldCount() < 2)
+					continue;
+				byte[] label = Arrays.copyOfRange(reader.getBuffer(), reader.getFieldStart(1), reader.getFieldEnd(1));
+				long number = IndexFiles.parseCanonical(reader.getBuffer(), reader.getFieldStart(0), reader.getFieldEnd(0));
+				if (number >= 0)
+					numeric.put(number, label);
+				else
+					other.put(reader.getString(0), label);
+			}
+		} finally {
+			reader.close();
+		}
+		long[] keys = new long[numeric.size()];
+		int k = 0;
+		for (Long key : numeric.keySet())
+			keys[k++] = key;
+		Arrays.sort(keys);
+		ArrayList<byte[]> otherKeys = new ArrayList<byte[]>();
+		for (String key : other.keySet())
+			otherKeys.add(key.getBytes(StandardCharsets.UTF_8));
+		Collections.sort(otherKeys, new Comparator<byte[]>() {
+			public int compare(byte[] a, byte[] b) {
+				return(IndexFiles.compareBytes(a, 0, a.length, b, 0, b.length));
+			}
+		});
+		int keyBlobLength = 0;
+		for (byte[] key : otherKeys)
+			keyBlobLength += key.length;
+		long labelBlobLength = 0;
+		for (byte[] label : numeric.values())
+			labelBlobLength += label.length;
+		for (byte[] label : other.values())
+			labelBlobLength += label.length;
+		if (labelBlobLength > Integer.MAX_VALUE)
+			throw new IOException("The labels in " + textFile + " are too large to be indexed.");
+
+		DataOutputStream out = IndexFiles.createTemp(indexFile);
+		try {
+			out.writeInt(INDEX_MAGIC);
+			out.writeInt(INDEX_VERSION);
+			out.writeLong(textLength);
+			out.writeLong(textModified);
+			out.writeInt(keys.length);
+			out.writeInt(otherKeys.size());
+			out.writeInt(keyBlobLength);
+			out.writeInt((int)labelBlobLength);
+			for (long key : keys)
+				out.writeLong(key);
+			int offset = 0;
+			out.writeInt(offset);
+			for (byte[] key : otherKeys)
+				out.writeInt(offset += key.length);
+			for (byte[] key : otherKeys)
+				out.write(key);
+			for (int i = IndexFiles.padding(keyBlobLength); i > 0; i--)
+				out.write(0);
+			offset = 0;
+			out.writeInt(offset);
+			for (long key : keys)
+				out.writeInt(offset += numeric.get(key).length);
+			for (byte[] key : otherKeys)
+				out.writeInt(offset += other.get(new String(key, StandardCharsets.UTF_8)).length);
+			for (long key : keys)
+				out.write(numeric.get(key));
+			for (byte[] key : otherKeys)
+				out.write(other.get(new String(key, StandardCharsets.UTF_8)));
+		} finally {
+			out.close();
+		}
+		IndexFiles.replace(indexFile);
+	} //end of writeIndex
+
+
+	/**
+	 * getLabel
+	 * @return  String with the label for the ID, or null if the ID is not in the table
+	 */
+	public String getLabel(String key) {
+		byte[] bytes = key.getBytes(StandardCharsets.UTF_8);
+		return(getLabel(bytes, 0, bytes.length));
+	} //end of getLabel
+
+
+	/**
+	 * getLabel
+	 * Looks up an ID held in a range of bytes, such as a field in a row buffer.
+	 * @return  String with the label for the ID, or null if the ID is not in the table
+	 */
+	public String getLabel(byte[] buffer, int start, int end) {
+		int entry = find(buffer, start, end);
+		if (entry < 0)
+			return(null);
+		int labelStart = labelOffsets.get(entry);
+		byte[] label = new byte[labelOffsets.get(entry + 1) - labelStart];
+		ByteBuffer view = labelBlob.duplicate();
+		view.position(labelStart);
+		view.get(label);
+		return(new String(label, StandardCharsets.UTF_8));
+	} //end of getLabel
+
+
+	public int size() {
+		return(numericCount + stringCount);
+	}
+
+
+	/**
+	 * find
+	 * @return  the position of the ID in the label offsets, or -1 if it is not in the index
+	 */
+	private int find(byte[] buffer, int start, int end) {
+		long number = IndexFiles.parseCanonical(buffer, start, end);
+		if (number >= 0) {
+			int low = 0;
+			int high = numericCount - 1;
+			while (low <= high) {
+				int middle = (low + high) >>> 1;
+				long key = numericKeys.get(middle);
+				if (key < number)
+					low = middle + 1;
+				else if (key > number)
+					high = middle - 1;
+				else
+					return(middle);
+			}
+			return(-1);
+		}
+		int low = 0;
+		int high = stringCount - 1;
+		while (low <= high) {
+			int middle = (low + high) >>> 1;
+			int result = compareKey(middle, buffer, start, end);
+			if (result < 0)
+				low = middle + 1;
+			else if (result > 0)
+				high = middle - 1;
+			else
+				return(numericCount + middle);
+		}
+		return(-1);
+	} //end of find
+
+
+	/**
+	 * compareKey
+	 * Compares a non-numeric key in the index with a range of bytes, as unsigned bytes.
+	 */
+	private int compareKey(int key, byte[] buffer, int start, int end) {
+		int keyStart = keyOffsets.get(key);
+		int keyLength = keyOffsets.get(key + 1) - keyStart;
+		int length = Math.min(keyLength, end - start);
+		for (int i = 0; i < length; i++) {
+			int difference = (keyBlob.get(keyStart + i) & 0xff) - (buffer[start + i] & 0xff);
+			if (difference != 0)
+				return(difference);
+		}
+		return(keyLength - (end - start));
+	} //end of compareKey
+
+
+	/**
+	 * isConsistent
+	 * @return  true if a table of offsets starts at 0, does not decrease, and ends at
+	 *          the length of the blob it points into
+	 */
+	private static boolean isConsistent(IntBuffer offsets, int blobLength) {
+		int last = offsets.limit() - 1;
+		if (offsets.get(0) != 0 || offsets.get(last) != blobLength)
+			return(false);
+		for (int i = 0; i < last; i++) {
+			if (offsets.get(i) > offsets.get(i + 1))
+				return(false);
+		}
+		return(true);
+	} //end of isConsistent
+
+
+	/**
+	 * slice
+	 * @return  the next length bytes of the buffer as a buffer of their own, moving
+	 *          the position past them
+	 */
+	private static ByteBuffer slice(ByteBuffer data, long length) throws IOException {
+		if (length > data.remaining())
+			throw new IOException("The label index is truncated.");
+		ByteBuffer slice = data.slice();
+		slice.limit((int)length);
+		data.position(data.position() + (int)length);
+		return(slice);
+	} //end of slice
+
+} //end of class LabelIndex
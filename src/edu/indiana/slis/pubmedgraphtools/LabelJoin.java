@@ -0,0 +1,250 @@
+package edu.indiana.slis.pubmedgraphtools;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+
+
+/**
+ * LabelJoin
+ * Attaches labels to the IDs in a tab separated file, such as the descriptor and
+ * qualifier IDs in top3000QualifiedDescriptorsUsed.tsv.  The file is read once,
+ * and each join looks up the ID in one of its columns in a LabelSource.
+ *
+ * Each join can write its own output with an "ID,label" row for every row whose
+ * ID has a label, which is the output descFile and qualFile have always written.
+ * A combined node file can also be written, with the ID and label of every join
+ * for each row, as quoted CSV since the labels may contain commas.
+ *
+ * If the system property pubmed.labelIndex is true, the label tables are opened
+ * through a saved LabelIndex next to each table (built on first use and rebuilt
+ * when the table changes) instead of being parsed on every run.
+ */
+public class LabelJoin {
+	public final static String LABEL_INDEX_PROPERTY = "pubmed.labelIndex"; // true to save and reuse label indexes
+	public final static String QUALIFIED_FILE = "src/resources/QD/top3000QualifiedDescriptorsUsed.tsv";
+	public final static String DESCRIPTOR_FILE = "src/resources/QD/descriptor.txt";
+	public final static String QUALIFIER_FILE = "src/resources/QD/qualifier.txt";
+	public final static String DESCRIPTOR_OUTPUT = "src/resources/QD/output.csv";
+	public final static String QUALIFIER_OUTPUT = "src/resources/QD/output2.csv";
+	private String inputFileName = null;
+	private ArrayList<Join> joins = new ArrayList<Join>();
+	private String combinedFileName = null;
+
+
+	/**
+	 * @param inputFileName  String with the path of the tab separated file to label
+	 */
+	public LabelJoin(String inputFileName) {
+		this.inputFileName = inputFileName;
+	} //end of constructor
+
+
+	/**
+	 * addJoin
+	 * @param labels          LabelSource to look the IDs up in
+	 * @param keyColumn       integer with the column of the input holding the IDs (0 for the first)
+	 * @param outputFileName  String with the path of the "ID,label" output for this join,
+	 *                        or null if the labels only go to the combined file
+	 */
+	public void addJoin(LabelSource labels, int keyColumn, String outputFileName) {
+		joins.add(new Join(labels, keyColumn, outputFileName));
+	} //end of addJoin
+
+
+	/**
+	 * setCombinedFileName
+	 * @param combinedFileName  String with the path of the combined node file, or null for none
+	 */
+	public void setCombinedFileName(String combinedFileName) {
+		this.combinedFileName = combinedFileName;
+	} //end of setCombinedFileName
+
+
+	/**
+	 * process
+	 * Reads the input once and writes the output of every join.  Empty rows are
+	 * skipped; a row without the key column of a join gets no label from it.
+	 * @return  long with the number of rows read
+	 */
+	public long process() throws IOException {
+		DelimitedRowReader reader = null;
+		BufferedWriter combined = null;
+		long rows = 0;
+		try {
+			for (Join join : joins) {
+				if (join.outputFileName != null)
+					join.writer = new BufferedWriter(new FileWriter(join.outputFileName));
+			}
+			if (combinedFileName != null)
+				combined = new BufferedWriter(new FileWriter(combinedFileName));
+			reader = DelimitedRowReader.open(new File(inputFileName), '\t');
+			while (reader.nextRow()) {
+				if (reader.isEmptyRow())
+					continue;
+				rows++;
+				for (int i = 0; i < joins.size(); i++) {
+					Join join = joins.get(i);
+					String key = (reader.getFieldCount() > join.keyColumn)? reader.getString(join.keyColumn) : null;
+					String label = (key != null)? join.labels.getLabel(key) : null;
+					if (label != null && join.writer != null) {
+						join.writer.append(key + "," + label);
+						join.writer.newLine();
+					}
+					if (combined != null) {
+						if (i > 0)
+							combined.write(',');
+						combined.write(quote(key));
+						combined.write(',');
+						combined.write(quote(label));
+					}
+				}
+				if (combined != null)
+					combined.newLine();
+			}
+		} finally {
+			try {reader.close();}catch(Exception e){}
+			for (Join join : joins) {
+				try {join.writer.close();}catch(Exception e){}
+				join.writer = null;
+			}
+			try {combined.close();}catch(Exception e){}
+		}
+		return(rows);
+	} //end of process
+
+
+	/**
+	 * quote
+	 * @return  the value as a CSV field, quoted if it contains a comma, quote or
+	 *          line break, and empty if it is null
+	 */
+	static String quote(String value) {
+		if (value == null)
+			return("");
+		if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0 && value.indexOf('\r') < 0)
+			return(value);
+		return("\"" + value.replace("\"", "\"\"") + "\"");
+	} //end of quote
+
+
+	/**
+	 * Join
+	 * A lookup table, the input column looked up in it, and where its labels go.
+	 */
+	private static class Join {
+		private LabelSource labels = null;
+		private int keyColumn = 0;
+		private String outputFileName = null;
+		private BufferedWriter writer = null;
+
+		Join(LabelSource labels, int keyColumn, String outputFileName) {
+			this.labels = labels;
+			this.keyColumn = keyColumn;
+			this.outputFileName = outputFileName;
+		}
+	} //end of class Join
+
+
+	/**
+	 * readLabels
+	 * Reads a tab separated table of IDs and labels, through its saved index if the
+	 * pubmed.labelIndex system property is true.  If the index cannot be saved, the
+	 * table is parsed instead.
+	 */
+	public static LabelSource readLabels(File tableFile) throws IOException {
+		if (Boolean.getBoolean(LABEL_INDEX_PROPERTY)) {
+			try {
+				return(LabelIndex.open(tableFile));
+			} catch (IOException e) {
+				System.err.println("The label index for " + tableFile + 
+						" could not be used, so the table is read instead: " + e.getMessage());
+			}
+		}
+		return(LabelTable.read(tableFile, 0, 1));
+	} //end of readLabels
+
+
+	/**
+	 * descriptorLabels
+	 * @return  the descriptor labels used by descFile
+	 */
+	static LabelSource descriptorLabels() throws IOException {
+		return(readLabels(new File(DESCRIPTOR_FILE)));
+	} //end of descriptorLabels
+
+
+	/**
+	 * qualifierLabels
+	 * @return  the qualifier labels used by qualFile, with an empty label for the
+	 *          qualifier ID 0 used by descriptors without a qualifier
+	 */
+	static LabelSource qualifierLabels() throws IOException {
+		final LabelSource qualifiers = readLabels(new File(QUALIFIER_FILE));
+		if (qualifiers.getLabel("0") != null)
+			return(qualifiers);
+		return(new LabelSource() {
+			public String getLabel(String key) {
+				String label = qualifiers.getLabel(key);
+				return((label == null && "0".equals(key))? "" : label);
+			}
+			
+			public int size() {
+				return(qualifiers.size() + 1);
+			}
+		});
+	} //end of qualifierLabels
+
+
+	/**
+	 * @param args  With no arguments, writes the descFile and qualFile outputs for
+	 *              src/resources/QD/top3000QualifiedDescriptorsUsed.tsv in one pass.
+	 *              Otherwise, the path of the tab separated file to label, followed by:<br/>
+	 * -join table,column,output   A tab separated table of IDs and labels, the input column
+	 *                             (0 for the first) holding the IDs to look up, and the "ID,label"
+	 *                             output file, which can be left empty.  Can be repeated.<br/>
+	 * -combined file              Combined node file with the ID and label of each join for every row.
+	 */
+	public static void main(String[] args) throws IOException {
+		if (args.length == 0) {
+			LabelJoin labelJoin = new LabelJoin(QUALIFIED_FILE);
+			labelJoin.addJoin(descriptorLabels(), 0, DESCRIPTOR_OUTPUT);
+			labelJoin.addJoin(qualifierLabels(), 1, QUALIFIER_OUTPUT);
+			labelJoin.process();
+			return;
+		}
+		if (args.length % 2 == 0) {
+			usage();
+			return;
+		}
+		LabelJoin labelJoin = new LabelJoin(args[0]);
+		for (int i = 1; i < args.length; i += 2) {
+			if ("-combined".equals(args[i]))
+				labelJoin.setCombinedFileName(args[i + 1]);
+			else if ("-join".equals(args[i])) {
+				String[] join = args[i + 1].split(",", -1);
+				int keyColumn = -1;
+				try {
+					keyColumn = (join.length == 3)? Integer.parseInt(join[1]) : -1;
+				} catch (NumberFormatException e) {}
+				if (keyColumn < 0) {
+					usage();
+					return;
+				}
+				labelJoin.addJoin(readLabels(new File(join[0])), keyColumn,
+						join[2].isEmpty()? null : join[2]);
+			} else {
+				usage();
+				return;
+			}
+		}
+		labelJoin.process();
+	} //end of main
+
+	private static void usage() {
+		System.out.println("LabelJoin [file to label [-join table,column,output]... [-combined file]]");
+	} //end of usage
+
+} //end of class LabelJoin
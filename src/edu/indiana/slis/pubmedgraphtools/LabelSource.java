@@ -0,0 +1,23 @@
+package edu.indiana.slis.pubmedgraphtools;
+
+
+/**
+ * LabelSource
+ * A lookup table from an ID (such as a MeSH descriptor or qualifier ID) to its
+ * label, used by LabelJoin to attach labels to the rows of a file.
+ */
+public interface LabelSource {
+	/**
+	 * getLabel
+	 * @param key  String with the ID to look up
+	 * @return     String with the label for the ID, or null if the ID is not in the table
+	 */
+	String getLabel(String key);
+
+	/**
+	 * size
+	 * @return  integer with the number of IDs in the table
+	 */
+	int size();
+
+} //end of interface LabelSource
@@ -0,0 +1,53 @@
+package edu.indiana.slis.pubmedgraphtools;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+
+
+/**
+ * LabelTable
+ * A label lookup table held in a HashMap, read from a tab separated file such as
+ * descriptor.txt or qualifier.txt with an ID and a label on each row.
+ */
+public class LabelTable implements LabelSource {
+	private HashMap<String, String> labels = new HashMap<String, String>();
+
+
+	/**
+	 * read
+	 * Reads a tab separated table.  Rows without both columns are skipped, and a
+	 * later row for the same ID replaces an earlier one.
+	 * @param file         File with the table
+	 * @param keyColumn    integer with the column holding the ID (0 for the first column)
+	 * @param labelColumn  integer with the column holding the label
+	 */
+	public static LabelTable read(File file, int keyColumn, int labelColumn) throws IOException {
+		LabelTable table = new LabelTable();
+		DelimitedRowReader reader = DelimitedRowReader.open(file, '\t');
+		try {
+			int columns = Math.max(keyColumn, labelColumn) + 1;
+			while (reader.nextRow()) {
+				if (reader.getFieldCount() >= columns)
+					table.labels.put(reader.getString(keyColumn), reader.getString(labelColumn));
+			}
+		} finally {
+			reader.close();
+		}
+		return(table);
+	} //end of read
+
+
+	public void put(String key, String label) {
+		labels.put(key, label);
+	}
+
+	public String getLabel(String key) {
+		return labels.get(key);
+	}
+
+	public int size() {
+		return labels.size();
+	}
+
+} //end of class LabelTable
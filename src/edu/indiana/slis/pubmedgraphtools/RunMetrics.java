@@ -0,0 +1,226 @@
+package edu.indiana.slis.pubmedgraphtools;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+
+/**
+ * RunMetrics
+ * Counters and timers for a ContributedBy run.  The counters can be updated by
+ * any number of worker threads, are visible through JMX while the run is in
+ * progress, and are summarized as JSON at the end of the run.
+ *
+ * The per-file latency histogram has one bucket for each power of two of
+ * microseconds: bucket i counts the files that took less than 2^i microseconds
+ * (and at least 2^(i-1)).
+ */
+public class RunMetrics implements RunMetricsMBean {
+	private final static int HISTOGRAM_BUCKETS = 40;
+
+	private final LongAdder filesDiscovered = new LongAdder();
+	private final LongAdder filesProcessed = new LongAdder();
+	private final LongAdder filesReused = new LongAdder();
+	private final LongAdder rowsRead = new LongAdder();
+	private final LongAdder rowsExcluded = new LongAdder();
+	private final LongAdder termsWithExclusions = new LongAdder();
+	private final LongAdder edgesWritten = new LongAdder();
+	private final LongAdder bytesRead = new LongAdder();
+	private volatile long bytesWritten = 0; // only updated by the writing thread
+	private final LongAdder parseNanos = new LongAdder();
+	private final LongAdder normalizeNanos = new LongAdder();
+	private final LongAdder writeNanos = new LongAdder();
+	private final AtomicLongArray fileLatency = new AtomicLongArray(HISTOGRAM_BUCKETS);
+	private final long startNanos = System.nanoTime();
+	private volatile long endNanos = 0;
+	private ObjectName objectName = null;
+
+
+	public void fileDiscovered() {
+		filesDiscovered.increment();
+	}
+
+	/**
+	 * fileReused
+	 * Records a data file whose edges were copied from the previous output.
+	 */
+	public void fileReused() {
+		filesReused.increment();
+	}
+
+	/**
+	 * fileProcessed
+	 * Records a data file that was read and normalized.
+	 * @param rows          long with the number of rows read from the file
+	 * @param excluded      long with the number of rows that were excluded
+	 * @param bytes         long with the number of bytes read from the file
+	 * @param latencyNanos  long with the time taken to process the file
+	 */
+	public void fileProcessed(long rows, long excluded, long bytes, long latencyNanos) {
+		filesProcessed.increment();
+		rowsRead.add(rows);
+		bytesRead.add(bytes);
+		if (excluded > 0) {
+			rowsExcluded.add(excluded);
+			termsWithExclusions.increment();
+		}
+		long micros = TimeUnit.NANOSECONDS.toMicros(latencyNanos);
+		int bucket = Math.min(64 - Long.numberOfLeadingZeros(micros), HISTOGRAM_BUCKETS - 1);
+		fileLatency.incrementAndGet(bucket);
+	} //end of fileProcessed
+
+	public void addParseTime(long nanos) {
+		parseNanos.add(nanos);
+	}
+
+	public void addNormalizeTime(long nanos) {
+		normalizeNanos.add(nanos);
+	}
+
+	public void addWriteTime(long nanos) {
+		writeNanos.add(nanos);
+	}
+
+	public void addEdgesWritten(long edges) {
+		edgesWritten.add(edges);
+	}
+
+	public void addBytesRead(long bytes) {
+		bytesRead.add(bytes);
+	}
+
+	public void setBytesWritten(long bytes) {
+		bytesWritten = bytes;
+	}
+
+	public void finish() {
+		endNanos = System.nanoTime();
+	}
+
+
+	/**
+	 * register
+	 * Registers the metrics with the platform MBean server.
+	 * @param name  String used as the name property of the MBean
+	 */
+	public void register(String name) throws Exception {
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		objectName = new ObjectName("edu.indiana.slis.pubmedgraphtools:type=ContributedBy,name=" +
+				ObjectName.quote(name));
+		if (server.isRegistered(objectName))
+			server.unregisterMBean(objectName);
+		server.registerMBean(this, objectName);
+	} //end of register
+
+
+	public void unregister() {
+		try {
+			if (objectName != null)
+				ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+		} catch (Exception e) {}
+		objectName = null;
+	} //end of unregister
+
+
+	public long getFilesDiscovered() {
+		return filesDiscovered.sum();
+	}
+
+	public long getFilesProcessed() {
+		return filesProcessed.sum();
+	}
+
+	public long getFilesReused() {
+		return filesReused.sum();
+	}
+
+	public long getRowsRead() {
+		return rowsRead.sum();
+	}
+
+	public long getRowsExcluded() {
+		return rowsExcluded.sum();
+	}
+
+	public long getTermsWithExclusions() {
+		return termsWithExclusions.sum();
+	}
+
+	public long getEdgesWritten() {
+		return edgesWritten.sum();
+	}
+
+	public long getBytesRead() {
+		return bytesRead.sum();
+	}
+
+	public long getBytesWritten() {
+		return bytesWritten;
+	}
+
+	public long getParseMillis() {
+		return TimeUnit.NANOSECONDS.toMillis(parseNanos.sum());
+	}
+
+	public long getNormalizeMillis() {
+		return TimeUnit.NANOSECONDS.toMillis(normalizeNanos.sum());
+	}
+
+	public long getWriteMillis() {
+		return TimeUnit.NANOSECONDS.toMillis(writeNanos.sum());
+	}
+
+	public long getElapsedMillis() {
+		long end = (endNanos != 0)? endNanos : System.nanoTime();
+		return TimeUnit.NANOSECONDS.toMillis(end - startNanos);
+	}
+
+	public long[] getFileLatencyHistogram() {
+		long[] histogram = new long[HISTOGRAM_BUCKETS];
+		for (int i = 0; i < HISTOGRAM_BUCKETS; i++)
+			histogram[i] = fileLatency.get(i);
+		return histogram;
+	}
+
+
+	/**
+	 * toJson
+	 * @return  String with a JSON object summarizing the run.  The histogram only
+	 *          lists the buckets that have files, keyed by their upper bound in
+	 *          microseconds.
+	 */
+	public String toJson() {
+		StringBuilder json = new StringBuilder(512);
+		json.append("{\"filesDiscovered\":").append(getFilesDiscovered())
+		    .append(",\"filesProcessed\":").append(getFilesProcessed())
+		    .append(",\"filesReused\":").append(getFilesReused())
+		    .append(",\"rowsRead\":").append(getRowsRead())
+		    .append(",\"rowsExcluded\":").append(getRowsExcluded())
+		    .append(",\"termsWithExclusions\":").append(getTermsWithExclusions())
+		    .append(",\"edgesWritten\":").append(getEdgesWritten())
+		    .append(",\"bytesRead\":").append(getBytesRead())
+		    .append(",\"bytesWritten\":").append(getBytesWritten())
+		    .append(",\"elapsedMillis\":").append(getElapsedMillis())
+		    .append(",\"parseMillis\":").append(getParseMillis())
+		    .append(",\"normalizeMillis\":").append(getNormalizeMillis())
+		    .append(",\"writeMillis\":").append(getWriteMillis())
+		    .append(",\"fileLatencyMicros\":{");
+		long[] histogram = getFileLatencyHistogram();
+		boolean first = true;
+		for (int i = 0; i < histogram.length; i++) {
+			if (histogram[i] == 0)
+				continue;
+			if (!first)
+				json.append(',');
+			json.append("\"<").append(1L << i).append("\":").append(histogram[i]);
+			first = false;
+		}
+		json.append("}}");
+		return(json.toString());
+	} //end of toJson
+
+} //end of class RunMetrics
@@ -0,0 +1,24 @@
+package edu.indiana.slis.pubmedgraphtools;
+
+
+/**
+ * RunMetricsMBean
+ * The counters and timers of a run that are exposed through JMX.
+ */
+public interface RunMetricsMBean {
+	long getFilesDiscovered();
+	long getFilesProcessed();
+	long getFilesReused();
+	long getRowsRead();
+	long getRowsExcluded();
+	long getTermsWithExclusions();
+	long getEdgesWritten();
+	long getBytesRead();
+	long getBytesWritten();
+	long getParseMillis();
+	long getNormalizeMillis();
+	long getWriteMillis();
+	long getElapsedMillis();
+	long[] getFileLatencyHistogram();
+	String toJson();
+} //end of interface RunMetricsMBean
@@ -0,0 +1,103 @@
+package edu.indiana.slis.pubmedgraphtools;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+
+/**
+ * ShardedEdgeSink
+ * Writes each edge to one of several sinks, chosen with Shards by a hash of
+ * either the MeSH term or the contributor ID.  Sharding by term keeps all of the
+ * edges of a term in one shard; sharding by contributor keeps all of the edges
+ * of a contributor in one shard.  Each shard has its own buffer and file, and
+ * the edges of a shard are in the order they were added.
+ */
+public class ShardedEdgeSink implements EdgeSink {
+	private EdgeSink[] shards = null;
+	private boolean byContributor = false;
+	private String meshTerm = null;
+	private String termLabels = null;
+	private int termShard = 0;       // shard of the current term, when sharding by term
+	private boolean[] started = null; // shards the current term has been started in
+
+	/**
+	 * @param shards         EdgeSink for each shard
+	 * @param byContributor  boolean that is true to shard by contributor ID rather than by term
+	 */
+	public ShardedEdgeSink(EdgeSink[] shards, boolean byContributor) {
+		this.shards = shards;
+		this.byContributor = byContributor;
+		this.started = new boolean[shards.length];
+	} //end of constructor
+
+
+	public void startTerm(String meshTerm, String termLabels) throws IOException {
+		this.meshTerm = meshTerm;
+		this.termLabels = termLabels;
+		if (byContributor)
+			Arrays.fill(started, false);
+		else {
+			termShard = Shards.shardOf(meshTerm, shards.length);
+			shards[termShard].startTerm(meshTerm, termLabels);
+		}
+	} //end of startTerm
+
+
+	public void addEdge(String contributorId, double weight) throws IOException {
+		if (!byContributor) {
+			shards[termShard].addEdge(contributorId, weight);
+			return;
+		}
+		int shard = Shards.shardOf(contributorId, shards.length);
+		if (!started[shard]) {
+			shards[shard].startTerm(meshTerm, termLabels);
+			started[shard] = true;
+		}
+		shards[shard].addEdge(contributorId, weight);
+	} //end of addEdge
+
+
+	/**
+	 * getTermShard
+	 * @return  the sink of the current term's shard, when sharding by term
+	 */
+	public EdgeSink getTermShard() {
+		if (byContributor)
+			throw new IllegalStateException("The edges of a term are split between shards.");
+		return(shards[termShard]);
+	} //end of getTermShard
+
+
+	public void flush() throws IOException {
+		for (EdgeSink shard : shards)
+			shard.flush();
+	} //end of flush
+
+
+	public long getBytesWritten() {
+		long bytes = 0;
+		for (EdgeSink shard : shards)
+			bytes += shard.getBytesWritten();
+		return(bytes);
+	} //end of getBytesWritten
+
+
+	/**
+	 * close
+	 * Closes every shard, and throws the first exception once all of them have been closed.
+	 */
+	public void close() throws IOException {
+		IOException first = null;
+		for (EdgeSink shard : shards) {
+			try {
+				shard.close();
+			} catch (IOException e) {
+				if (first == null)
+					first = e;
+			}
+		}
+		if (first != null)
+			throw first;
+	} //end of close
+
+} //end of class ShardedEdgeSink
@@ -0,0 +1,124 @@
+package edu.indiana.slis.pubmedgraphtools;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+
+/**
+ * Shards
+ * Splits the edges of an output between a number of shard files by a hash of a
+ * key, so the shards can be loaded in parallel.  The hash is the polynomial hash
+ * of String.hashCode computed over the UTF-8 bytes of the key (which is the same
+ * as String.hashCode for ASCII keys), and the shard is that hash modulo the
+ * number of shards, taken as a non-negative value.  A loader can compute the same
+ * shard for any key.
+ *
+ * Shard i of an output named name.ext is written to name-00i.ext.
+ */
+public class Shards {
+
+	private Shards() {
+	}
+
+
+	/**
+	 * shardOf
+	 * @return  the shard, from 0 to shards - 1, for the key in a range of bytes
+	 */
+	public static int shardOf(byte[] buffer, int start, int end, int shards) {
+		int hash = 0;
+		for (int i = start; i < end; i++)
+			hash = 31 * hash + (buffer[i] & 0xff);
+		return(Math.floorMod(hash, shards));
+	} //end of shardOf
+
+
+	/**
+	 * shardOf
+	 * @return  the shard, from 0 to shards - 1, for the key
+	 */
+	public static int shardOf(String key, int shards) {
+		int hash = 0;
+		for (int i = 0; i < key.length(); i++) {
+			char c = key.charAt(i);
+			if (c >= 0x80) {
+				byte[] bytes = key.getBytes(StandardCharsets.UTF_8);
+				return(shardOf(bytes, 0, bytes.length, shards));
+			}
+			hash = 31 * hash + c;
+		}
+		return(Math.floorMod(hash, shards));
+	} //end of shardOf
+
+
+	/**
+	 * getShardFile
+	 * @return  the File for one shard of an output
+	 */
+	public static File getShardFile(File outputFile, int shard) {
+		String name = outputFile.getName();
+		int dot = name.lastIndexOf('.');
+		String shardName = (dot > 0)?
+				name.substring(0, dot) + String.format("-%03d", shard) + name.substring(dot) :
+				name + String.format("-%03d", shard);
+		return(new File(outputFile.getAbsoluteFile().getParentFile(), shardName));
+	} //end of getShardFile
+
+
+	/**
+	 * getShardFiles
+	 * @return  the File for each shard of an output, which with one shard is the
+	 *          output file itself
+	 */
+	public static File[] getShardFiles(File outputFile, int shards) {
+		if (shards <= 1)
+			return(new File[] {outputFile});
+		File[] files = new File[shards];
+		for (int i = 0; i < shards; i++)
+			files[i] = getShardFile(outputFile, i);
+		return(files);
+	} //end of getShardFiles
+
+
+	/**
+	 * openStreams
+	 * Opens a buffered stream for each file, replacing any existing file.
+	 */
+	public static OutputStream[] openStreams(File[] files, int bufferSize) throws IOException {
+		OutputStream[] streams = new OutputStream[files.length];
+		try {
+			for (int i = 0; i < files.length; i++)
+				streams[i] = new BufferedOutputStream(new FileOutputStream(files[i]), bufferSize);
+		} catch (IOException e) {
+			closeStreams(streams);
+			throw e;
+		}
+		return(streams);
+	} //end of openStreams
+
+
+	/**
+	 * closeStreams
+	 * Closes each stream, flushing it first, and throws the first exception once
+	 * all of them have been closed.
+	 */
+	public static void closeStreams(OutputStream[] streams) throws IOException {
+		IOException first = null;
+		for (OutputStream stream : streams) {
+			try {
+				if (stream != null)
+					stream.close();
+			} catch (IOException e) {
+				if (first == null)
+					first = e;
+			}
+		}
+		if (first != null)
+			throw first;
+	} //end of closeStreams
+
+} //end of class Shards
@@ -0,0 +1,104 @@
+package edu.indiana.slis.pubmedgraphtools;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+
+
+/**
+ * TextEdgeSink
+ * Writes each edge as a "meshTerm,contributorId,weight" line, followed by the
+ * label columns of the term, as ContributedBy always has.  Edges that were
+ * already formatted (on a worker thread) or that are copied from a previous
+ * output can be written as they are.
+ */
+public class TextEdgeSink implements EdgeSink {
+	private final static int DEFAULT_BUFFER_SIZE = 8192; // as for a BufferedWriter
+	private CountingOutputStream counter = null;
+	private PrintWriter writer = null;
+	private String lineSeparator = null;
+	private String meshTerm = null;
+	private String termLabels = "";
+
+
+	/**
+	 * @param out            OutputStream for the edges
+	 * @param position       long with the bytes already in the output, when appending to it
+	 * @param lineSeparator  String written after each edge
+	 */
+	public TextEdgeSink(OutputStream out, long position, String lineSeparator) {
+		this(out, position, lineSeparator, DEFAULT_BUFFER_SIZE);
+	} //end of constructor
+
+
+	/**
+	 * @param bufferSize  integer with the characters buffered before they are written
+	 */
+	public TextEdgeSink(OutputStream out, long position, String lineSeparator, int bufferSize) {
+		counter = new CountingOutputStream(out);
+		counter.setCount(position);
+		writer = new PrintWriter(new BufferedWriter(new OutputStreamWriter(counter), bufferSize));
+		this.lineSeparator = lineSeparator;
+	} //end of constructor
+
+
+	public void startTerm(String meshTerm, String termLabels) {
+		this.meshTerm = meshTerm;
+		this.termLabels = termLabels;
+	} //end of startTerm
+
+
+	public void addEdge(String contributorId, double weight) {
+		writer.print(meshTerm);
+		writer.print(',');
+		writer.print(contributorId);
+		writer.print(',');
+		writer.print(weight);
+		writer.print(termLabels);
+		writer.print(lineSeparator);
+	} //end of addEdge
+
+
+	/**
+	 * print
+	 * Writes edges that are already formatted as lines.
+	 */
+	public void print(String edges) {
+		writer.print(edges);
+	} //end of print
+
+
+	/**
+	 * getOutputStream
+	 * @return  the stream under the writer, after flushing the writer, for edges
+	 *          that are already bytes
+	 */
+	public OutputStream getOutputStream() throws IOException {
+		flush();
+		return(counter);
+	} //end of getOutputStream
+
+
+	public void flush() throws IOException {
+		writer.flush();
+		if (writer.checkError())
+			throw new IOException("The edges could not be written.");
+	} //end of flush
+
+
+	public long getBytesWritten() {
+		return(counter.getCount());
+	}
+
+
+	public void close() throws IOException {
+		try {
+			flush();
+		} finally {
+			writer.close();
+		}
+	} //end of close
+
+} //end of class TextEdgeSink
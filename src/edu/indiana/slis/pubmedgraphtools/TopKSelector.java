@@ -0,0 +1,159 @@
+package edu.indiana.slis.pubmedgraphtools;
+
+import java.util.Arrays;
+
+
+/**
+ * TopKSelector
+ * Selects the contributors with the largest weights from a PageRank file in a
+ * single pass, so the file does not need to be sorted beforehand.  The current
+ * selection is kept in a bounded min-heap of primitive weights and row indices
+ * (with the matching IDs held alongside), and the smallest selected weight sits
+ * at the root so each new row is checked with one comparison.
+ *
+ * When two rows have the same weight the earlier row is preferred, which is what
+ * taking the first rows of a file sorted by descending weight would give.
+ */
+public class TopKSelector {
+	private int capacity = 0;
+	private int size = 0;
+	private double[] weights = null;
+	private int[] rows = null;
+	private String[] ids = null;
+
+
+	/**
+	 * @param capacity  integer with the number of contributors to select.  For
+	 *                  Integer.MAX_VALUE (no limit) the heap grows as needed and
+	 *                  every row is kept.
+	 */
+	public TopKSelector(int capacity) {
+		this.capacity = capacity;
+		int initial = Math.min(capacity, 1024);
+		weights = new double[initial];
+		rows = new int[initial];
+		ids = new String[initial];
+	} //end of constructor
+
+
+	/**
+	 * accepts
+	 * @param weight  double with the weight of the next row
+	 * @return        true if a row with that weight would be selected.  This is
+	 *                checked before the ID is looked up or turned into a String.
+	 */
+	public boolean accepts(double weight) {
+		return(size < capacity || weight > weights[0]);
+	} //end of accepts
+
+
+	/**
+	 * add
+	 * Adds a row to the selection, replacing the smallest selected row if the
+	 * selection is already full.  The caller should check accepts() first.
+	 * @param weight  double with the weight of the row
+	 * @param row     integer with the position of the row in the file
+	 * @param id      String with the contributor ID of the row
+	 */
+	public void add(double weight, int row, String id) {
+		if (size < capacity) {
+			if (size == weights.length) {
+				int grown = (int)Math.min((long)capacity, weights.length * 2L);
+				weights = Arrays.copyOf(weights, grown);
+				rows = Arrays.copyOf(rows, grown);
+				ids = Arrays.copyOf(ids, grown);
+			}
+			set(size, weight, row, id);
+			siftUp(size++);
+		} else if (weight > weights[0]) {
+			set(0, weight, row, id);
+			siftDown(0, size);
+		}
+	} //end of add
+
+
+	/**
+	 * sortDescending
+	 * Sorts the selection in place so that position 0 holds the largest weight.
+	 * After this call no more rows should be added.
+	 */
+	public void sortDescending() {
+		// heap sort: moving the smallest entry to the end each time leaves
+		// the entries in descending order
+		for (int last = size - 1; last > 0; last--) {
+			swap(0, last);
+			siftDown(0, last);
+		}
+	} //end of sortDescending
+
+
+	public int size() {
+		return size;
+	}
+
+	public double getWeight(int index) {
+		return weights[index];
+	}
+
+	public String getId(int index) {
+		return ids[index];
+	}
+
+
+	/**
+	 * isWorse
+	 * @return  true if the entry at position a ranks below the entry at position b
+	 */
+	private boolean isWorse(int a, int b) {
+		if (weights[a] != weights[b])
+			return(weights[a] < weights[b]);
+		return(rows[a] > rows[b]);
+	} //end of isWorse
+
+
+	private void siftUp(int index) {
+		while (index > 0) {
+			int parent = (index - 1) >>> 1;
+			if (!isWorse(index, parent))
+				break;
+			swap(index, parent);
+			index = parent;
+		}
+	} //end of siftUp
+
+
+	private void siftDown(int index, int end) {
+		while (true) {
+			int child = 2 * index + 1;
+			if (child >= end)
+				break;
+			if (child + 1 < end && isWorse(child + 1, child))
+				child++;
+			if (!isWorse(child, index))
+				break;
+			swap(index, child);
+			index = child;
+		}
+	} //end of siftDown
+
+
+	private void set(int index, double weight, int row, String id) {
+		weights[index] = weight;
+		rows[index] = row;
+		ids[index] = id;
+	} //end of set
+
+
+	private void swap(int a, int b) {
+		double weight = weights[a];
+		weights[a] = weights[b];
+		weights[b] = weight;
+		int row = rows[a];
+		rows[a] = rows[b];
+		rows[b] = row;
+		String id = ids[a];
+		ids[a] = ids[b];
+		ids[b] = id;
+	} //end of swap
+
+} //end of class TopKSelector
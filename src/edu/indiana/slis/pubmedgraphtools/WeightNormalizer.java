@@ -0,0 +1,277 @@
+package edu.indiana.slis.pubmedgraphtools;
+
+
+/**
+ * WeightNormalizer
+ * Normalizes a run of weights held in a primitive double array so they total 1,
+ * as ContributedBy does for the contributors of a MeSH term and coAuthor does for
+ * the co-authors of an author.  Each weight is divided by the total of the run,
+ * and the difference between 1 and the total of the divided weights is added to
+ * the largest weight, where it changes the weight the least: the first one for
+ * ContributedBy, whose weights are sorted, and the one a caller names otherwise.
+ *
+ * Both totals are compensated sums (Neumaier's variant of Kahan summation), so
+ * the difference given to the largest weight stays within a few ulps of 1 however
+ * many weights there are.  The sum is kept in LANES interleaved lanes, with
+ * weight i of a run added to lane i % LANES, and the lanes are then combined in
+ * a fixed order.  Every kernel, and the running Sum used for files that are
+ * streamed, follows the same order of operations, so they give the same bits.
+ *
+ * The kernel that uses the Vector API is compiled on JDK 17 or later and loaded
+ * reflectively; it is used when the tools run with the jdk.incubator.vector
+ * module added (--add-modules jdk.incubator.vector) on a processor with 256-bit
+ * vectors.  Otherwise the scalar kernel is used.
+ */
+public class WeightNormalizer {
+	public final static int LANES = 4;
+	private final static String VECTOR_KERNEL = "edu.indiana.slis.pubmedgraphtools.VectorWeightKernel";
+	private final static Kernel KERNEL = loadKernel();
+
+
+	private WeightNormalizer() {
+	}
+
+
+	/**
+	 * normalize
+	 * Divides the weights from start to end, which are sorted largest first, by 
+	 * their total, and adds the rounding difference to the weight at start.
+	 * @return  the total of the weights before they were divided
+	 */
+	public static double normalize(double[] weights, int start, int end) {
+		return(normalize(KERNEL, weights, start, end, start));
+	} //end of normalize
+
+
+	/**
+	 * normalize
+	 * Divides the weights from start to end by their total, and adds the rounding
+	 * difference to the weight at target, which should be the largest.  A total of 0
+	 * leaves the weights as they are, apart from the difference.
+	 * @return  the total of the weights before they were divided
+	 */
+	public static double normalize(double[] weights, int start, int end, int target) {
+		return(normalize(KERNEL, weights, start, end, target));
+	} //end of normalize
+
+
+	static double normalize(Kernel kernel, double[] weights, int start, int end, int target) {
+		if (end <= start)
+			return(0.0);
+		double total = kernel.sum(weights, start, end);
+		double adjustedTotal = (total != 0)? kernel.divide(weights, start, end, total) : total;
+		weights[target] += 1 - adjustedTotal;
+		return(total);
+	} //end of normalize
+
+
+	/**
+	 * sum
+	 * @return  the compensated total of the weights from start to end
+	 */
+	public static double sum(double[] weights, int start, int end) {
+		return(KERNEL.sum(weights, start, end));
+	} //end of sum
+
+
+	/**
+	 * getKernelName
+	 * @return  String naming the kernel in use, for logging
+	 */
+	public static String getKernelName() {
+		return(KERNEL.getName());
+	} //end of getKernelName
+
+
+	/**
+	 * loadVectorKernel
+	 * @return  the Vector API kernel, or null if it was not compiled, the module was
+	 *          not added, or the processor does not have 256-bit vectors
+	 */
+	static Kernel loadVectorKernel() {
+		try {
+			return((Kernel)Class.forName(VECTOR_KERNEL).getDeclaredConstructor().newInstance());
+		} catch (Exception e) {
+			return(null);
+		} catch (LinkageError e) {
+			return(null); // the class was compiled, but the module is missing
+		}
+	} //end of loadVectorKernel
+
+
+	private static Kernel loadKernel() {
+		Kernel kernel = loadVectorKernel();
+		return((kernel != null)? kernel : new ScalarKernel());
+	} //end of loadKernel
+
+
+	/**
+	 * error
+	 * @return  the rounding error of the addition t = s + x
+	 */
+	static double error(double s, double x, double t) {
+		return((Math.abs(s) >= Math.abs(x))? (s - t) + x : (x - t) + s);
+	} //end of error
+
+
+	/**
+	 * Kernel
+	 * The loops over a run of weights.  Both methods must add the weights in the
+	 * order described for WeightNormalizer.
+	 */
+	interface Kernel {
+		/**
+		 * @return  the compensated total of the weights
+		 */
+		double sum(double[] weights, int start, int end);
+
+		/**
+		 * Divides each weight by the divisor.
+		 * @return  the compensated total of the divided weights
+		 */
+		double divide(double[] weights, int start, int end, double divisor);
+
+		String getName();
+	} //end of interface Kernel
+
+
+	/**
+	 * ScalarKernel
+	 * Adds the weights a block of LANES at a time with Sum.
+	 */
+	static class ScalarKernel implements Kernel {
+
+		public double sum(double[] weights, int start, int end) {
+			Sum sum = new Sum();
+			int i = start;
+			for (; i <= end - LANES; i += LANES)
+				sum.addBlock(weights[i], weights[i + 1], weights[i + 2], weights[i + 3]);
+			for (; i < end; i++)
+				sum.add(weights[i]);
+			return(sum.getTotal());
+		} //end of sum
+
+		public double divide(double[] weights, int start, int end, double divisor) {
+			Sum sum = new Sum();
+			int i = start;
+			for (; i <= end - LANES; i += LANES) {
+				weights[i] /= divisor;
+				weights[i + 1] /= divisor;
+				weights[i + 2] /= divisor;
+				weights[i + 3] /= divisor;
+				sum.addBlock(weights[i], weights[i + 1], weights[i + 2], weights[i + 3]);
+			}
+			for (; i < end; i++)
+				sum.add(weights[i] /= divisor);
+			return(sum.getTotal());
+		} //end of divide
+
+		public String getName() {
+			return("scalar");
+		}
+	} //end of class ScalarKernel
+
+
+	/**
+	 * Sum
+	 * A running compensated sum in LANES lanes, for weights that are added one at
+	 * a time, such as the rows of a file that is streamed.  It gives the same
+	 * total as sum over an array of the same weights.
+	 */
+	public static class Sum {
+		private double s0, s1, s2, s3; // the sum of each lane
+		private double c0, c1, c2, c3; // the compensation of each lane
+		private int lane = 0;          // the lane of the next weight
+
+		public void add(double x) {
+			double t = 0.0;
+			switch (lane) {
+			case 0:
+				t = s0 + x;
+				c0 += error(s0, x, t);
+				s0 = t;
+				break;
+			case 1:
+				t = s1 + x;
+				c1 += error(s1, x, t);
+				s1 = t;
+				break;
+			case 2:
+				t = s2 + x;
+				c2 += error(s2, x, t);
+				s2 = t;
+				break;
+			default:
+				t = s3 + x;
+				c3 += error(s3, x, t);
+				s3 = t;
+			}
+			lane = (lane + 1) & (LANES - 1);
+		} //end of add
+
+		/**
+		 * addBlock
+		 * Adds one weight to each lane, when the next weight is for the first lane.
+		 */
+		void addBlock(double x0, double x1, double x2, double x3) {
+			double t0 = s0 + x0;
+			double t1 = s1 + x1;
+			double t2 = s2 + x2;
+			double t3 = s3 + x3;
+			c0 += error(s0, x0, t0);
+			c1 += error(s1, x1, t1);
+			c2 += error(s2, x2, t2);
+			c3 += error(s3, x3, t3);
+			s0 = t0;
+			s1 = t1;
+			s2 = t2;
+			s3 = t3;
+		} //end of addBlock
+
+		/**
+		 * setLane
+		 * Sets the sum and compensation of a lane, such as from a vector.  The next
+		 * weight added is for the first lane.
+		 */
+		void setLane(int lane, double sum, double compensation) {
+			switch (lane) {
+			case 0:
+				s0 = sum;
+				c0 = compensation;
+				break;
+			case 1:
+				s1 = sum;
+				c1 = compensation;
+				break;
+			case 2:
+				s2 = sum;
+				c2 = compensation;
+				break;
+			default:
+				s3 = sum;
+				c3 = compensation;
+			}
+			this.lane = 0;
+		} //end of setLane
+
+		/**
+		 * getTotal
+		 * @return  the total of the lanes, combined in order with their compensations
+		 */
+		public double getTotal() {
+			double total = s0;
+			double compensation = 0.0;
+			double t = total + s1;
+			compensation += error(total, s1, t);
+			total = t;
+			t = total + s2;
+			compensation += error(total, s2, t);
+			total = t;
+			t = total + s3;
+			compensation += error(total, s3, t);
+			total = t;
+			return(total + (compensation + ((c0 + c1) + (c2 + c3))));
+		} //end of getTotal
+	} //end of class Sum
+
+} //end of class WeightNormalizer
@@ -1,58 +1,435 @@
 package edu.indiana.slis.pubmedgraphtools;
 
-import java.io.BufferedReader;
-import java.io.BufferedWriter;
-import java.io.FileReader;
-import java.io.FileWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
-import java.nio.Buffer;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 
+/**
+ * coAuthor
+ * Weights the co-author edges of each author by the share of the author's papers
+ * written with each co-author.  The input is a tab separated file of author ID,
+ * co-author ID and paper count that is grouped by author, so it is read as a 
+ * stream: the co-authors of one author are collected, written, and the group
+ * reused for the next author.  Rows that repeat an author and co-author are
+ * added together (see CoAuthorGroup), in every mode.  All of the edges go 
+ * through one buffered output.
+ *
+ * With more than one thread, the file is cut into chunks that each start at the
+ * first row of an author, so no author is split between chunks.  Each chunk is
+ * memory mapped and processed on its own thread into a part file next to the 
+ * output, and the parts are appended to the output in file order, so the output
+ * is the same as a single-threaded run.
+ *
+ * The edges can also be split between several shard files by a hash of the
+ * author ID (see Shards), so all of an author's edges are in the same shard.
+ * Each shard has its own buffered output, and in the parallel mode each chunk
+ * writes a part file for every shard.
+ *
+ * Input that is not grouped by author can be read in the unsorted mode, which
+ * aggregates the rows with CoAuthorAggregator under a memory budget and spills
+ * sorted runs to temporary files.  The edges are then written in order of author
+ * and co-author ID.
+ */
 public class coAuthor {
-	static String firstLine = "";	
-	static BufferedWriter writer;
+	//input file - tab separated file provided by Scott
+	public final static String DEFAULT_INPUT = "src/Author-CoAuthor-3paper-threshold.tsv";
+	public final static String DEFAULT_OUTPUT = "src/CoAuthor.csv";
+	private final static int OUTPUT_BUFFER_SIZE = 1 << 20;
+	private final static long CHUNK_SIZE = 64L * 1024 * 1024; // largest chunk when there are enough threads
+	private final static long MIN_PARALLEL_SIZE = 4L * 1024 * 1024; // smaller files are not split
+	private final static int SCAN_BUFFER_SIZE = 64 * 1024;
+	// names of the optional settings accepted by main
+	private final static HashSet<String> OPTIONS = new HashSet<String>(Arrays.asList(
+			"-threads", "-unsorted", "-memory", "-tmpdir", "-shards"));
 	
+	/**
+	 * @param args  Optional input file (default src/Author-CoAuthor-3paper-threshold.tsv) 
+	 *              and output file (default src/CoAuthor.csv).  The output file is replaced.
+	 * These can be followed by optional settings, each given as a name and value:<br/>
+	 * -threads n             Number of threads for grouped input (default 1).<br/>
+	 * -unsorted true|false   If true, the input does not need to be grouped by author (default false).<br/>
+	 * -memory mb             Megabytes of heap for the rows held in memory in the unsorted mode (default 256).<br/>
+	 * -tmpdir directory      Directory for the run files of the unsorted mode (default the system's temporary directory).<br/>
+	 * -shards n              Number of files the edges are split between by a hash of the author ID, with
+	 *                        shard i of name.ext written to name-00i.ext (default 1).
+	 */
 	public static void main(String[] args) throws IOException {
-		//input file - tab separated file provided by Scott
-		BufferedReader reader = new BufferedReader(new FileReader("src/Author-CoAuthor-3paper-threshold.tsv"));		
-		String firstTerm="";
-		String line = "";
-		HashMap<String, Integer> map = new HashMap<String, Integer>();
-
-		firstLine = reader.readLine();
-		firstTerm = firstLine.split("\\t")[0];
-		map.put(firstLine.split("\\t")[1], Integer.parseInt(firstLine.split("\\t")[2]));
-				
-		while((line=reader.readLine())!=null) {
-			if(firstTerm.equals(line.split("\\t")[0])) {
-				map.put(line.split("\\t")[1], Integer.parseInt(line.split("\\t")[2]));
+		ArrayList<String> parameters = new ArrayList<String>();
+		HashMap<String, String> options = new HashMap<String, String>();
+		for (int i = 0; i < args.length; i++) {
+			if (args[i].startsWith("-") && i + 1 < args.length && OPTIONS.contains(args[i]))
+				options.put(args[i], args[++i]);
+			else
+				parameters.add(args[i]);
+		}
+		int threads = 1;
+		int shards = 1;
+		long memory = CoAuthorAggregator.DEFAULT_MEMORY;
+		try {
+			if (options.containsKey("-threads"))
+				threads = Integer.parseInt(options.get("-threads"));
+			if (options.containsKey("-memory"))
+				memory = Long.parseLong(options.get("-memory")) * 1024 * 1024;
+			if (options.containsKey("-shards"))
+				shards = Integer.parseInt(options.get("-shards"));
+		} catch (NumberFormatException e) {
+			parameters.add(null); // reported below
+		}
+		if (parameters.size() > 2 || parameters.contains(null)) {
+			System.out.println("coAuthor [input file] [output file] [-threads n] [-unsorted true|false]" + 
+					" [-memory mb] [-tmpdir directory] [-shards n]");
+			return;
+		}
+		File inputFile = new File((parameters.size() > 0)? parameters.get(0) : DEFAULT_INPUT);
+		File outputFile = new File((parameters.size() > 1)? parameters.get(1) : DEFAULT_OUTPUT);
+		if (Boolean.parseBoolean(options.get("-unsorted"))) {
+			File tempDirectory = options.containsKey("-tmpdir")? new File(options.get("-tmpdir")) : null;
+			processUnsorted(inputFile, outputFile, memory, tempDirectory, shards);
+		} else
+			process(inputFile, outputFile, threads, shards);
+	}
+	
+	
+	/**
+	 * processUnsorted
+	 * Reads a co-author file that does not need to be grouped by author, holding at
+	 * most about memoryBudget bytes of rows in memory, and writes the weighted edges.
+	 * @param tempDirectory  File with the directory for the run files, or null for
+	 *                       the system's temporary directory
+	 * @return               long with the number of edges written
+	 */
+	public static long processUnsorted(File inputFile, File outputFile, long memoryBudget, File tempDirectory) 
+			throws IOException {
+		return(processUnsorted(inputFile, outputFile, memoryBudget, tempDirectory, 1));
+	}
+	
+	
+	/**
+	 * processUnsorted
+	 * Reads a co-author file that does not need to be grouped by author and writes
+	 * the weighted edges split between the given number of shard files.
+	 * @return  long with the number of edges written
+	 */
+	public static long processUnsorted(File inputFile, File outputFile, long memoryBudget, File tempDirectory, 
+			int shards) throws IOException {
+		CoAuthorAggregator aggregator = new CoAuthorAggregator(memoryBudget, tempDirectory);
+		DelimitedRowReader reader = DelimitedRowReader.open(inputFile, '\t');
+		try {
+			while(reader.nextRow()) {
+				if (reader.isEmptyRow())
+					continue;
+				checkRow(reader);
+				aggregator.add(reader.getBuffer(), reader.getFieldStart(0), reader.getFieldEnd(0), 
+						reader.getFieldStart(1), reader.getFieldEnd(1), reader.parseInt(2));
+			}
+		} finally {
+			reader.close();
+		}
+		OutputStream[] outs = Shards.openStreams(Shards.getShardFiles(outputFile, shards), OUTPUT_BUFFER_SIZE);
+		try {
+			return(aggregator.write(outs, new CoAuthorGroup(System.lineSeparator())));
+		} finally {
+			Shards.closeStreams(outs);
+		}
+	}
+	
+	
+	/**
+	 * process
+	 * Reads the grouped co-author file and writes the weighted edges.
+	 * @return  long with the number of edges written
+	 */
+	public static long process(File inputFile, File outputFile) throws IOException {
+		return(process(inputFile, outputFile, 1, 1));
+	}
+	
+	
+	/**
+	 * process
+	 * Reads the grouped co-author file using the given number of threads.  Files
+	 * smaller than MIN_PARALLEL_SIZE are always read on the calling thread.
+	 * @return  long with the number of edges written
+	 */
+	public static long process(File inputFile, File outputFile, int threads) throws IOException {
+		return(process(inputFile, outputFile, threads, 1));
+	}
+	
+	
+	/**
+	 * process
+	 * Reads the grouped co-author file using the given number of threads, and writes
+	 * the edges split between the given number of shard files.
+	 * @return  long with the number of edges written
+	 */
+	public static long process(File inputFile, File outputFile, int threads, int shards) throws IOException {
+		File[] outputFiles = Shards.getShardFiles(outputFile, shards);
+		if (threads <= 1 || inputFile.length() < MIN_PARALLEL_SIZE) {
+			OutputStream[] outs = Shards.openStreams(outputFiles, OUTPUT_BUFFER_SIZE);
+			try {
+				return(process(DelimitedRowReader.open(inputFile, '\t'), outs));
+			} finally {
+				Shards.closeStreams(outs);
+			}
+		}
+		
+		FileInputStream input = new FileInputStream(inputFile);
+		FileOutputStream[] outputs = new FileOutputStream[outputFiles.length];
+		ForkJoinPool executor = new ForkJoinPool(threads);
+		ArrayList<Future<Long>> chunks = new ArrayList<Future<Long>>();
+		ArrayList<File[]> parts = new ArrayList<File[]>(); // the part file of each shard, for each chunk
+		try {
+			for (int i = 0; i < outputs.length; i++)
+				outputs[i] = new FileOutputStream(outputFiles[i]);
+			FileChannel channel = input.getChannel();
+			long size = channel.size();
+			// more chunks than threads, so a chunk with large groups does not hold up the rest
+			int count = (int)Math.max(threads * 4L, (size + CHUNK_SIZE - 1) / CHUNK_SIZE);
+			ChannelBytes bytes = new ChannelBytes(channel, size);
+			long start = 0;
+			for (int i = 1; i <= count && start < size; i++) {
+				long end = (i == count)? size : Math.max(start, findGroupStart(bytes, size / count * i));
+				if (end == start)
+					continue;
+				File[] part = new File[outputFiles.length];
+				for (int s = 0; s < part.length; s++)
+					part[s] = new File(outputFiles[s].getPath() + ".part" + parts.size());
+				parts.add(part);
+				chunks.add(executor.submit(new ChunkTask(channel, start, end, part)));
+				start = end;
+			}
+			// append the parts to their shards in file order as they are finished
+			long edges = 0;
+			for (int i = 0; i < chunks.size(); i++) {
+				edges += waitForChunk(chunks.get(i));
+				for (int s = 0; s < outputs.length; s++) {
+					appendPart(parts.get(i)[s], outputs[s].getChannel());
+					parts.get(i)[s].delete();
+				}
+			}
+			return(edges);
+		} finally {
+			for (Future<Long> chunk : chunks)
+				chunk.cancel(true);
+			executor.shutdownNow();
+			try {
+				executor.awaitTermination(1, TimeUnit.MINUTES);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
 			}
-			else {
-				calculateWeight(firstTerm,map);
-				map.clear();
-				firstTerm = line.split("\\t")[0];
-				map.put(line.split("\\t")[1], Integer.parseInt(line.split("\\t")[2]));
+			for (File[] part : parts) {
+				for (File shardPart : part)
+					shardPart.delete();
 			}
+			for (FileOutputStream output : outputs) {
+				if (output != null)
+					output.close();
+			}
+			input.close();
+		}
+	}
+	
+	
+	private static void appendPart(File part, FileChannel outChannel) throws IOException {
+		FileInputStream partInput = new FileInputStream(part);
+		try {
+			FileChannel partChannel = partInput.getChannel();
+			long position = 0;
+			long partSize = partChannel.size();
+			while (position < partSize)
+				position += partChannel.transferTo(position, partSize - position, outChannel);
+		} finally {
+			partInput.close();
 		}
-		reader.close();
 	}
+	
+	
+	/**
+	 * process
+	 * Writes the weighted edges for each author group read, including the last one,
+	 * to the shard output of its author.  The reader is closed when the rows have 
+	 * been read.
+	 * @return  long with the number of edges written
+	 */
+	static long process(DelimitedRowReader reader, OutputStream[] outs) throws IOException {
+		CoAuthorGroup group = new CoAuthorGroup(System.lineSeparator());
+		long edges = 0;
+		try {
+			while(reader.nextRow()) {
+				if (reader.isEmptyRow())
+					continue;
+				checkRow(reader);
+				byte[] row = reader.getBuffer();
+				if (group.isEmpty() || !group.isAuthor(row, reader.getFieldStart(0), reader.getFieldEnd(0))) {
+					edges += group.write(outs);
+					group.start(row, reader.getFieldStart(0), reader.getFieldEnd(0));
+				}
+				group.add(row, reader.getFieldStart(1), reader.getFieldEnd(1), reader.parseInt(2));
+			}
+			edges += group.write(outs);
+		} finally {
+			reader.close();
+		}
+		return(edges);
+	}
+	
+	
+	private static void checkRow(DelimitedRowReader reader) throws IOException {
+		if (reader.getFieldCount() < 3)
+			throw new IOException("Row " + reader.getRowNumber() + 
+					" does not have an author, co-author and paper count.");
+	}
+	
+	
+	private static long waitForChunk(Future<Long> chunk) throws IOException {
+		try {
+			return(chunk.get());
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof IOException)
+				throw (IOException)e.getCause();
+			throw new IOException("A chunk of the co-author file could not be processed: " + 
+					e.getCause(), e.getCause());
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while processing the co-author file", e);
+		}
+	}
+	
+	
+	/**
+	 * findGroupStart
+	 * Finds where a chunk that would start at the given position should start
+	 * instead: the first row of the next author to start at or after that position.
+	 * Blank rows are skipped, since they do not end a group.
+	 * @return  long with the position of that row, or the file size if there is none
+	 */
+	static long findGroupStart(ChannelBytes bytes, long position) throws IOException {
+		if (position <= 0)
+			return(0);
+		long first = (bytes.get(position - 1) == '\n')? position : nextLine(bytes, position);
+		while (first < bytes.size && isBlank(bytes, first))
+			first = nextLine(bytes, first);
+		long line = first;
+		while (line < bytes.size) {
+			line = nextLine(bytes, line);
+			while (line < bytes.size && isBlank(bytes, line))
+				line = nextLine(bytes, line);
+			if (line < bytes.size && !sameAuthor(bytes, first, line))
+				return(line);
+		}
+		return(bytes.size);
+	}
+	
+	
+	/**
+	 * nextLine
+	 * @return  long with the position after the next line feed at or after position
+	 */
+	private static long nextLine(ChannelBytes bytes, long position) throws IOException {
+		while (position < bytes.size && bytes.get(position) != '\n')
+			position++;
+		return(Math.min(position + 1, bytes.size));
+	}
+	
+	
+	private static boolean isBlank(ChannelBytes bytes, long line) throws IOException {
+		int c = bytes.get(line);
+		return(c == '\n' || (c == '\r' && bytes.get(line + 1) == '\n'));
+	}
+	
+	
+	/**
+	 * sameAuthor
+	 * @return  true if the rows starting at positions a and b have the same first field
+	 */
+	private static boolean sameAuthor(ChannelBytes bytes, long a, long b) throws IOException {
+		for (long i = 0; ; i++) {
+			int ca = bytes.get(a + i);
+			int cb = bytes.get(b + i);
+			boolean endA = (ca < 0 || ca == '\t' || ca == '\r' || ca == '\n');
+			boolean endB = (cb < 0 || cb == '\t' || cb == '\r' || cb == '\n');
+			if (endA || endB)
+				return(endA && endB);
+			if (ca != cb)
+				return(false);
+		}
+	}
+	
+	
+	/**
+	 * ChannelBytes
+	 * Reads single bytes of a file through a window that is refilled as needed,
+	 * for the short scans that find the chunk boundaries.
+	 */
+	static class ChannelBytes {
+		private FileChannel channel = null;
+		private long size = 0;
+		private ByteBuffer window = ByteBuffer.allocate(SCAN_BUFFER_SIZE);
+		private long windowStart = 0;
+		private int windowLength = 0;
 		
-
-	private static void calculateWeight(String firstTerm, HashMap<String, Integer> map) throws IOException {
-		//output file
-		BufferedWriter writer = new BufferedWriter(new FileWriter("src/CoAuthor.csv",true));
-		float sum = 0;
-		for(String x : map.keySet()) {
-			sum = sum + map.get(x);
-		}
-		sum = 1/sum;
+		ChannelBytes(FileChannel channel, long size) {
+			this.channel = channel;
+			this.size = size;
+		}
 		
-		for(String x : map.keySet()) {
-			//System.out.println(firstTerm + "," + x + "," + (map.get(x)*sum));
-			writer.append(firstTerm + "," + x + "," + (map.get(x)*sum));
-			writer.newLine();
+		/**
+		 * @return  the byte at the position as an unsigned value, or -1 past the end of the file
+		 */
+		int get(long position) throws IOException {
+			if (position < 0 || position >= size)
+				return(-1);
+			if (position < windowStart || position >= windowStart + windowLength) {
+				window.clear();
+				windowStart = position;
+				while (window.hasRemaining()) {
+					if (channel.read(window, position + window.position()) < 0)
+						break;
+				}
+				windowLength = window.position();
+			}
+			return(window.get((int)(position - windowStart)) & 0xff);
 		}
-		writer.close();
-	}
+	} //end of class ChannelBytes
+	
+	
+	/**
+	 * ChunkTask
+	 * Processes one chunk of the co-author file into its part file for each shard.
+	 */
+	private static class ChunkTask implements Callable<Long> {
+		private FileChannel channel = null;
+		private long start = 0;
+		private long end = 0;
+		private File[] part = null;
+		
+		ChunkTask(FileChannel channel, long start, long end, File[] part) {
+			this.channel = channel;
+			this.start = start;
+			this.end = end;
+			this.part = part;
+		}
+		
+		public Long call() throws IOException {
+			OutputStream[] outs = Shards.openStreams(part, OUTPUT_BUFFER_SIZE);
+			try {
+				return(process(new DelimitedRowReader(channel, start, end, '\t'), outs));
+			} finally {
+				Shards.closeStreams(outs);
+			}
+		}
+	} //end of class ChunkTask
 }
@@ -1,42 +1,20 @@
 package edu.indiana.slis.pubmedgraphtools;
 
-import java.io.BufferedReader;
-import java.io.BufferedWriter;
-import java.io.FileReader;
-import java.io.FileWriter;
 import java.io.IOException;
-import java.util.HashMap;
 
 
+/**
+ * descFile
+ * Writes the descriptor labels for the qualified descriptor list.  The lookup is
+ * done by LabelJoin, which can also write the qualifier labels in the same pass.
+ */
 public class descFile {
 
 	public static void main(String[] args) throws IOException {
-		BufferedReader reader1 = new BufferedReader (new FileReader ("src/resources/QD/descriptor.txt"));
-		BufferedReader reader2 = new BufferedReader (new FileReader ("src/resources/QD/top3000QualifiedDescriptorsUsed.tsv"));
-		BufferedWriter writer = new BufferedWriter (new FileWriter ("src/resources/QD/output.csv"));
-		String line = "";
-		String line2 = "";
-		String descID;
-		HashMap<String, String> map = new HashMap<String, String>();
-		
-		while((line=reader1.readLine())!=null) {
-			map.put(line.split("\\t")[0], line.split("\\t")[1]);
-		}
-		reader1.close();
-		System.out.println(map.size());
-		
-		while((line2=reader2.readLine())!=null) {
-			descID = line2.split("\\t")[0];
-			
-			for(String x : map.keySet()) {
-				if(x.equals(descID)) {
-					writer.append(descID + "," + map.get(x));
-					writer.newLine();
-				}
-			}			
-		}
-		reader2.close();
-		writer.close();
+		LabelSource descriptors = LabelJoin.descriptorLabels();
+		System.out.println(descriptors.size());
+		LabelJoin labelJoin = new LabelJoin(LabelJoin.QUALIFIED_FILE);
+		labelJoin.addJoin(descriptors, 0, LabelJoin.DESCRIPTOR_OUTPUT);
+		labelJoin.process();
 	}
 }
-